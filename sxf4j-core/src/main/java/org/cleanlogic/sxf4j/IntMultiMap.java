@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Map from int key to ids (0...size-1) of int column, without boxing.
+ * Open addressing table keeps first id for key, ids with same key linked in ascending order.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+final class IntMultiMap {
+    /**
+     * Value returned if key or next id not exists.
+     */
+    static final int NONE = -1;
+
+    private int[] keys;
+    /**
+     * First id for key, {@link #NONE} if slot is empty.
+     */
+    private int[] heads;
+    /**
+     * Last id for key, used only on build for keep order.
+     */
+    private int[] tails;
+    /**
+     * Next id with same key.
+     */
+    private final int[] next;
+    private int keyCount;
+
+    /**
+     * Build map from column. Key of id i is column.get(i).
+     * @param column column of keys, heap or mapped.
+     * @param size count of used items of column.
+     */
+    IntMultiMap(IntBuffer column, int size) {
+        next = new int[size];
+        allocate(16);
+        for (int id = 0; id < size; id++) {
+            put(column.get(id), id);
+        }
+        tails = null;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        heads = new int[capacity];
+        tails = new int[capacity];
+        Arrays.fill(heads, NONE);
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void put(int key, int id) {
+        next[id] = NONE;
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (heads[slot] != NONE) {
+            if (keys[slot] == key) {
+                next[tails[slot]] = id;
+                tails[slot] = id;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        heads[slot] = id;
+        tails[slot] = id;
+        if (++keyCount * 4 > keys.length * 3) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldHeads = heads;
+        int[] oldTails = tails;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] == NONE) {
+                continue;
+            }
+            int slot = hash(oldKeys[i]) & mask;
+            while (heads[slot] != NONE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            heads[slot] = oldHeads[i];
+            tails[slot] = oldTails[i];
+        }
+    }
+
+    /**
+     * First (lowest) id with key.
+     * @param key key for search.
+     * @return id or {@link #NONE} if key not exists.
+     */
+    int first(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (heads[slot] != NONE) {
+            if (keys[slot] == key) {
+                return heads[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    /**
+     * Next id with same key as id.
+     * @param id current id.
+     * @return next id or {@link #NONE} if id is last.
+     */
+    int next(int id) {
+        return next[id];
+    }
+
+    /**
+     * Size of arrays of map.
+     * @return size in bytes.
+     */
+    long heapSize() {
+        return 4L * (keys.length + heads.length + next.length + (tails != null ? tails.length : 0));
+    }
+}
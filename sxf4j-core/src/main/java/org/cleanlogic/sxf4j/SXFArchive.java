@@ -0,0 +1,434 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Archive of SXF files: ZIP archive or single GZIP file (.sxf.gz). Entries read directly from archive without
+ * unpack to disk. Stored (not compressed) entries of ZIP mapped from archive file without copy, compressed
+ * entries inflated on read.
+ * <pre>
+ * try (SXFArchive sxfArchive = new SXFArchive(file)) {
+ *     for (SXFArchive.Entry entry : sxfArchive.getEntries()) {
+ *         SXFReader sxfReader = entry.openReader(new SXFReaderOptions());
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public class SXFArchive implements Closeable {
+    private static final int LOCAL_HEADER = 0x04034B50;
+    private static final int CENTRAL_HEADER = 0x02014B50;
+    private static final int END_HEADER = 0x06054B50;
+    private static final int ZIP64_END_LOCATOR = 0x07064B50;
+    private static final int ZIP64_END_HEADER = 0x06064B50;
+    private static final int END_LENGTH = 22;
+    private static final int ZIP64_EXTRA = 0x0001;
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    /**
+     * Not ZIP method, entry is whole GZIP file.
+     */
+    private static final int GZIP = -1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /**
+     * Names without UTF-8 flag written by archivers in OEM code page.
+     */
+    private static final Charset OEM_CHARSET = Charset.isSupported("IBM866") ? Charset.forName("IBM866") :
+            StandardCharsets.ISO_8859_1;
+
+    private final File file;
+    private final FileChannel fileChannel;
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Open archive and read list of entries.
+     * @param file ZIP archive or GZIP file.
+     * @throws IOException exception if wrong.
+     */
+    public SXFArchive(File file) throws IOException {
+        this.file = file;
+        fileChannel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            if (file.getName().toLowerCase().endsWith(".gz")) {
+                readGzip();
+            } else {
+                readCentralDirectory();
+            }
+        } catch (IOException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check file is archive by extension.
+     * @param file file.
+     * @return true for .zip and .gz files.
+     */
+    public static boolean isArchive(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".zip") || name.endsWith(".gz");
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Entries of archive without directories.
+     * @return entries in order of archive.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive " + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readGzip() throws IOException {
+        // Size of data is last four bytes of GZIP (modulo 2^32), used only as capacity hint
+        long size = fileChannel.size() >= 4 ? read(fileChannel.size() - 4, 4).getInt(0) & 0xFFFFFFFFL : -1;
+        String name = file.getName();
+        entries.add(new Entry(name.substring(0, name.length() - 3), GZIP, 0, fileChannel.size(), size));
+    }
+
+    private void readCentralDirectory() throws IOException {
+        long size = fileChannel.size();
+        int tailLength = (int) Math.min(size, END_LENGTH + 0xFFFF);
+        ByteBuffer tail = read(size - tailLength, tailLength);
+        int end = -1;
+        for (int i = tailLength - END_LENGTH; i >= 0; i--) {
+            if (tail.getInt(i) == END_HEADER) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) {
+            throw new IOException("End of central directory not found, " + file + " is not ZIP archive");
+        }
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        long endPosition = size - tailLength + end;
+        if ((count == 0xFFFF || directoryOffset == 0xFFFFFFFFL || directorySize == 0xFFFFFFFFL) && endPosition >= 20) {
+            ByteBuffer locator = read(endPosition - 20, 20);
+            if (locator.getInt(0) == ZIP64_END_LOCATOR) {
+                ByteBuffer zip64End = read(locator.getLong(8), 56);
+                if (zip64End.getInt(0) != ZIP64_END_HEADER) {
+                    throw new IOException("Wrong ZIP64 end of central directory in " + file);
+                }
+                count = zip64End.getLong(32);
+                directorySize = zip64End.getLong(40);
+                directoryOffset = zip64End.getLong(48);
+            }
+        }
+        if (directorySize > Integer.MAX_VALUE || directoryOffset + directorySize > size) {
+            throw new IOException("Wrong central directory of " + file);
+        }
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        int position = 0;
+        for (long i = 0; i < count; i++) {
+            if (position + 46 > directory.limit() || directory.getInt(position) != CENTRAL_HEADER) {
+                throw new IOException("Wrong central directory of " + file);
+            }
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long entrySize = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long localOffset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(position + 46);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, (flags & FLAG_UTF8) != 0 ? StandardCharsets.UTF_8 : OEM_CHARSET);
+
+            // ZIP64 extra field contains only values which are 0xFFFFFFFF in header, in this order
+            int extra = position + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xFFFF;
+                int length = directory.getShort(extra + 2) & 0xFFFF;
+                if (id == ZIP64_EXTRA) {
+                    int field = extra + 4;
+                    if (entrySize == 0xFFFFFFFFL) {
+                        entrySize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressedSize == 0xFFFFFFFFL) {
+                        compressedSize = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (localOffset == 0xFFFFFFFFL) {
+                        localOffset = directory.getLong(field);
+                    }
+                    break;
+                }
+                extra += 4 + length;
+            }
+            position = extraEnd + commentLength;
+
+            if (name.endsWith("/")) {
+                continue;
+            }
+            if ((flags & FLAG_ENCRYPTED) != 0) {
+                method = Integer.MAX_VALUE;
+            }
+            entries.add(new Entry(name, method, localOffset, compressedSize, entrySize));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+
+    /**
+     * Entry of archive. Readers and streams of entry read archive file, streams valid while archive is open.
+     */
+    public final class Entry {
+        private final String name;
+        private final int method;
+        private final long localOffset;
+        private final long compressedSize;
+        private final long size;
+        /**
+         * Offset of data in archive, read from local header on first access.
+         */
+        private long dataOffset = -1;
+
+        private Entry(String name, int method, long localOffset, long compressedSize, long size) {
+            this.name = name;
+            this.method = method;
+            this.localOffset = localOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        /**
+         * Name of entry with path inside archive.
+         * @return name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Size of uncompressed data. For GZIP file only low 32 bits of size are known.
+         * @return size in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Stored entries mapped without copy by {@link #openReader(SXFReaderOptions)}.
+         * @return true if entry is not compressed.
+         */
+        public boolean isStored() {
+            return method == STORED;
+        }
+
+        private synchronized long dataOffset() throws IOException {
+            if (dataOffset < 0) {
+                ByteBuffer header = read(localOffset, 30);
+                if (header.getInt(0) != LOCAL_HEADER) {
+                    throw new IOException("Wrong local header of entry " + name + " in " + file);
+                }
+                dataOffset = localOffset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            }
+            return dataOffset;
+        }
+
+        /**
+         * Open reader of entry. Stored entry mapped from archive, compressed entry inflated into memory.
+         * Sidecar index (see {@link SXFReaderOptions#sidecarIndex}) not used.
+         * @param sxfReaderOptions options of reader.
+         * @return reader, it must be closed by caller.
+         * @throws IOException exception if wrong.
+         */
+        public SXFReader openReader(SXFReaderOptions sxfReaderOptions) throws IOException {
+            if (method == STORED) {
+                FileChannel entryChannel = new RandomAccessFile(file, "r").getChannel();
+                try {
+                    SXFBuffer buffer = SXFBuffer.map(entryChannel, dataOffset(), size, sxfReaderOptions.segmentShift);
+                    return new SXFReader(null, entryChannel, buffer, sxfReaderOptions);
+                } catch (IOException | RuntimeException e) {
+                    entryChannel.close();
+                    throw e;
+                }
+            }
+            if (method == DEFLATED && size > Integer.MAX_VALUE - 8) {
+                throw new IOException("Entry " + name + " is too large for memory, use openStream");
+            }
+            ByteBuffer data;
+            try (InputStream inputStream = openInputStream()) {
+                data = readFully(inputStream, size);
+            }
+            return new SXFReader(null, null, SXFBuffer.wrap(data), sxfReaderOptions);
+        }
+
+        /**
+         * Open forward only reader of entry, compressed data inflated by parts.
+         * @param sxfReaderOptions options of reader.
+         * @return stream reader, it must be closed by caller.
+         * @throws IOException exception if wrong.
+         */
+        public SXFStreamReader openStream(SXFReaderOptions sxfReaderOptions) throws IOException {
+            InputStream inputStream = openInputStream();
+            try {
+                return new SXFStreamReader(Channels.newChannel(inputStream), sxfReaderOptions);
+            } catch (IOException | RuntimeException e) {
+                inputStream.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Open stream of uncompressed data of entry.
+         * @return input stream.
+         * @throws IOException exception if wrong.
+         */
+        public InputStream openInputStream() throws IOException {
+            if (method == GZIP) {
+                return new GZIPInputStream(new FileInputStream(file), BUFFER_SIZE);
+            }
+            if (method != STORED && method != DEFLATED) {
+                throw new IOException("Entry " + name + " has not supported compression method or encrypted");
+            }
+            long offset = dataOffset();
+            if (method == STORED) {
+                return new RegionInputStream(offset, size);
+            }
+            // Inflater without header needs one extra byte after data
+            InputStream compressed = new SequenceInputStream(new RegionInputStream(offset, compressedSize),
+                    new ByteArrayInputStream(new byte[1]));
+            return new InflaterInputStream(compressed, new Inflater(true), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    inf.end();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return file.getName() + "!" + name;
+        }
+    }
+
+    /**
+     * Read whole stream into array.
+     * @param inputStream stream.
+     * @param sizeHint expected size.
+     * @return buffer over read bytes.
+     * @throws IOException exception if wrong.
+     */
+    private static ByteBuffer readFully(InputStream inputStream, long sizeHint) throws IOException {
+        byte[] bytes = new byte[(int) Math.min(Math.max(sizeHint, BUFFER_SIZE), Integer.MAX_VALUE - 8)];
+        int count = 0;
+        while (true) {
+            if (count == bytes.length) {
+                if (count == Integer.MAX_VALUE - 8) {
+                    throw new IOException("Entry is too large for memory, use openStream");
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min((long) count * 2, Integer.MAX_VALUE - 8));
+            }
+            int read = inputStream.read(bytes, count, bytes.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return ByteBuffer.wrap(bytes, 0, count);
+    }
+
+    /**
+     * Stream of region of archive file. Reads are positional, so many streams of one archive can be read together.
+     */
+    private final class RegionInputStream extends InputStream {
+        private long position;
+        private final long end;
+
+        private RegionInputStream(long position, long length) {
+            this.position = position;
+            this.end = position + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            len = (int) Math.min(len, end - position);
+            int read = fileChannel.read(ByteBuffer.wrap(b, off, len), position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of archive " + file);
+            }
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+    }
+}
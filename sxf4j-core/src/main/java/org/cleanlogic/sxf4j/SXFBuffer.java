@@ -0,0 +1,284 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Little endian buffer addressed by long offsets. File mapped by segments of same size (2^shift bytes),
+ * so files more than 2 GB can be read without copy. All reads are absolute, buffer has no position
+ * and can be shared by many threads. Values inside one segment read directly from segment,
+ * values on border of segments assembled from bytes. Reads of unmapped buffer throw {@link IllegalStateException}.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+final class SXFBuffer {
+    /**
+     * Default size of segment is 1 GB.
+     */
+    static final int DEFAULT_SHIFT = 30;
+
+    private final ByteBuffer[] segments;
+    private final int shift;
+    private final long mask;
+    private final long limit;
+    /**
+     * Segments mapped by this buffer, not views of buffer of caller.
+     */
+    private final boolean mapped;
+    /**
+     * Set before unmap, so use of buffer after unmap fails by exception, not by crash of JVM.
+     */
+    private volatile boolean closed;
+
+    private SXFBuffer(ByteBuffer[] segments, int shift, long limit, boolean mapped) {
+        this.segments = segments;
+        this.shift = shift;
+        this.mask = (1L << shift) - 1;
+        this.limit = limit;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Map whole file by segments.
+     * @param fileChannel channel of file.
+     * @param shift size of segment is 2^shift bytes, not more than 30.
+     * @return buffer of file.
+     * @throws IOException exception if wrong.
+     */
+    static SXFBuffer map(FileChannel fileChannel, int shift) throws IOException {
+        return map(fileChannel, 0, fileChannel.size(), shift);
+    }
+
+    /**
+     * Map region of file by segments, for example stored entry of archive. Offsets of buffer
+     * are relative to start of region.
+     * @param fileChannel channel of file.
+     * @param start offset of region in file.
+     * @param size size of region.
+     * @param shift size of segment is 2^shift bytes, not more than 30.
+     * @return buffer of region.
+     * @throws IOException exception if wrong.
+     */
+    static SXFBuffer map(FileChannel fileChannel, long start, long size, int shift) throws IOException {
+        long segmentSize = 1L << shift;
+        int count = (int) Math.max(1, (size + segmentSize - 1) >>> shift);
+        ByteBuffer[] segments = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long position = i * segmentSize;
+            segments[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, start + position,
+                    Math.min(segmentSize, size - position)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return new SXFBuffer(segments, shift, size, true);
+    }
+
+    /**
+     * Buffer over one byte buffer, offsets are indexes of byte buffer.
+     * @param buffer byte buffer.
+     * @return buffer.
+     */
+    static SXFBuffer wrap(ByteBuffer buffer) {
+        ByteBuffer segment = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        return new SXFBuffer(new ByteBuffer[] {segment}, 31, segment.limit(), false);
+    }
+
+    /**
+     * Size of buffer.
+     * @return size in bytes.
+     */
+    long limit() {
+        return limit;
+    }
+
+    boolean isMapped() {
+        return mapped;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Release mapping of segments now, without wait of garbage collector. Reads of buffer
+     * after unmap throw exception, but read which is running in other thread at the moment of unmap
+     * crashes JVM, so buffer must not be used by other threads.
+     * @return true if segments unmapped, false if buffer not mapped or cleaner not available.
+     */
+    boolean unmap() {
+        closed = true;
+        if (!mapped) {
+            return false;
+        }
+        for (ByteBuffer segment : segments) {
+            if (!Unmapper.unmap(segment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cleaner of mapped buffers by reflection: Unsafe.invokeCleaner (Java 9 and later) or cleaner of buffer (Java 8).
+     */
+    private static final class Unmapper {
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+            } catch (Exception e) {
+                // Java 8, cleaner of buffer used
+                invokeCleaner = null;
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        private static boolean unmap(ByteBuffer buffer) {
+            try {
+                if (INVOKE_CLEANER != null) {
+                    INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                    return true;
+                }
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    Method cleanMethod = cleaner.getClass().getMethod("clean");
+                    cleanMethod.setAccessible(true);
+                    cleanMethod.invoke(cleaner);
+                }
+                return true;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * View of first segment with position 0, for read of passport and descriptor.
+     * @return byte buffer.
+     */
+    ByteBuffer firstSegment() {
+        checkOpen();
+        ByteBuffer segment = segments[0].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        segment.position(0);
+        return segment;
+    }
+
+    /**
+     * Segment which contains position, for bulk reads. Segment is shared, only absolute reads allowed.
+     * @param position offset in buffer.
+     * @return segment.
+     */
+    ByteBuffer segment(long position) {
+        checkOpen();
+        return segments[(int) (position >>> shift)];
+    }
+
+    /**
+     * Index of position in its segment, see {@link #segment(long)}.
+     * @param position offset in buffer.
+     * @return index in segment.
+     */
+    int index(long position) {
+        return (int) (position & mask);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("SXF buffer is closed");
+        }
+    }
+
+    byte get(long position) {
+        checkOpen();
+        return segments[(int) (position >>> shift)].get((int) (position & mask));
+    }
+
+    short getShort(long position) {
+        checkOpen();
+        ByteBuffer segment = segments[(int) (position >>> shift)];
+        int index = (int) (position & mask);
+        if (index + 2 <= segment.limit()) {
+            return segment.getShort(index);
+        }
+        return (short) ((get(position) & 0xFF) | (get(position + 1) << 8));
+    }
+
+    int getInt(long position) {
+        checkOpen();
+        ByteBuffer segment = segments[(int) (position >>> shift)];
+        int index = (int) (position & mask);
+        if (index + 4 <= segment.limit()) {
+            return segment.getInt(index);
+        }
+        return (get(position) & 0xFF) | (get(position + 1) & 0xFF) << 8 |
+                (get(position + 2) & 0xFF) << 16 | get(position + 3) << 24;
+    }
+
+    long getLong(long position) {
+        checkOpen();
+        ByteBuffer segment = segments[(int) (position >>> shift)];
+        int index = (int) (position & mask);
+        if (index + 8 <= segment.limit()) {
+            return segment.getLong(index);
+        }
+        return (getInt(position) & 0xFFFFFFFFL) | (long) getInt(position + 4) << 32;
+    }
+
+    float getFloat(long position) {
+        return Float.intBitsToFloat(getInt(position));
+    }
+
+    double getDouble(long position) {
+        return Double.longBitsToDouble(getLong(position));
+    }
+
+    /**
+     * Copy bytes into array.
+     * @param position offset of first byte.
+     * @param dst destination array.
+     */
+    void get(long position, byte[] dst) {
+        checkOpen();
+        int done = 0;
+        while (done < dst.length) {
+            ByteBuffer segment = segments[(int) (position >>> shift)].duplicate();
+            int index = (int) (position & mask);
+            int length = Math.min(dst.length - done, segment.limit() - index);
+            if (length <= 0) {
+                throw new IndexOutOfBoundsException("Position: " + position + ", limit: " + limit);
+            }
+            segment.position(index);
+            segment.get(dst, done, length);
+            done += length;
+            position += length;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.cleanlogic.sxf4j.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Catalog of SXF sheets (directory tree) as one dataset. Only passport and descriptor of each file read
+ * (in parallel, by {@link SXFPassport#readHeader(java.nio.file.Path, boolean)}), records not read and files
+ * not mapped. Catalog keeps frames of sheets, so query returns sheets which frames intersect envelope,
+ * and full reader opened only for these sheets.
+ * <pre>
+ * SXFCatalog sxfCatalog = new SXFCatalog(directory);
+ * for (SXFCatalog.Sheet sheet : sxfCatalog.queryBL(envelope)) {
+ *     try (SXFReader sxfReader = sheet.open(new SXFReaderOptions())) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public class SXFCatalog {
+    /**
+     * Files read by one task of pool.
+     */
+    private static final int THRESHOLD = 64;
+
+    private final List<Sheet> sheets;
+    /**
+     * Frames of sheets: minX, minY, maxX, maxY by rectangular and by geodetic coordinates.
+     */
+    private final double[] framesXY;
+    private final double[] framesBL;
+    private final Map<String, Sheet> nomenclatures = new HashMap<>();
+
+    /**
+     * Create catalog of all SXF files in directory and subdirectories.
+     * @param directory directory of sheets.
+     * @throws IOException exception if wrong.
+     */
+    public SXFCatalog(File directory) throws IOException {
+        this(search(directory), false);
+    }
+
+    /**
+     * Create catalog of files in shared fork/join pool.
+     * @param files SXF files.
+     * @param strict throw exception on bad file, else message printed and file skipped.
+     * @throws IOException exception if wrong.
+     */
+    public SXFCatalog(List<File> files, boolean strict) throws IOException {
+        this(files, strict, SXFReader.SharedPool.POOL);
+    }
+
+    /**
+     * Create catalog of files.
+     * @param files SXF files.
+     * @param strict throw exception on bad file, else message printed and file skipped.
+     * @param forkJoinPool pool for read of headers.
+     * @throws IOException exception if wrong.
+     */
+    public SXFCatalog(List<File> files, boolean strict, ForkJoinPool forkJoinPool) throws IOException {
+        File[] array = files.toArray(new File[files.size()]);
+        Sheet[] read = new Sheet[array.length];
+        IOException[] errors = new IOException[array.length];
+        forkJoinPool.invoke(new HeaderTask(array, read, errors, 0, array.length, strict));
+
+        List<Sheet> list = new ArrayList<>(array.length);
+        for (int i = 0; i < array.length; i++) {
+            if (errors[i] != null) {
+                if (strict) {
+                    throw errors[i];
+                }
+                System.err.println(array[i] + ": " + errors[i].getMessage());
+            } else {
+                list.add(read[i]);
+            }
+        }
+        sheets = Collections.unmodifiableList(list);
+        framesXY = new double[list.size() * 4];
+        framesBL = new double[list.size() * 4];
+        for (int i = 0; i < list.size(); i++) {
+            Sheet sheet = list.get(i);
+            frame(sheet.envelopeXY, framesXY, i * 4);
+            frame(sheet.envelopeBL, framesBL, i * 4);
+            String nomenclature = sheet.getNomenclature();
+            if (nomenclature != null && !nomenclatures.containsKey(nomenclature)) {
+                nomenclatures.put(nomenclature, sheet);
+            }
+        }
+    }
+
+    private static List<File> search(File directory) {
+        List<File> files = new ArrayList<>();
+        Utils.search(directory, files, ".sxf");
+        return files;
+    }
+
+    private static void frame(Envelope envelope, double[] frames, int offset) {
+        frames[offset] = envelope.getMinX();
+        frames[offset + 1] = envelope.getMinY();
+        frames[offset + 2] = envelope.getMaxX();
+        frames[offset + 3] = envelope.getMaxY();
+    }
+
+    private static Sheet readSheet(File file, boolean strict) throws IOException {
+        SXFPassport sxfPassport = SXFPassport.readHeader(file.toPath(), strict);
+        return new Sheet(file, sxfPassport, sxfPassport.getDescriptor());
+    }
+
+    /**
+     * Read headers of file range [from, to), split range while it more than threshold.
+     */
+    private static final class HeaderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final File[] files;
+        private final Sheet[] sheets;
+        private final IOException[] errors;
+        private final int from;
+        private final int to;
+        private final boolean strict;
+
+        private HeaderTask(File[] files, Sheet[] sheets, IOException[] errors, int from, int to, boolean strict) {
+            this.files = files;
+            this.sheets = sheets;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+            this.strict = strict;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        sheets[i] = readSheet(files[i], strict);
+                    } catch (IOException e) {
+                        errors[i] = e;
+                    }
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new HeaderTask(files, sheets, errors, from, middle, strict),
+                    new HeaderTask(files, sheets, errors, middle, to, strict));
+        }
+    }
+
+    /**
+     * All sheets of catalog, in order of files.
+     * @return sheets.
+     */
+    public List<Sheet> getSheets() {
+        return sheets;
+    }
+
+    public int size() {
+        return sheets.size();
+    }
+
+    /**
+     * Find sheet by nomenclature.
+     * @param nomenclature nomenclature of sheet.
+     * @return first sheet with nomenclature or null.
+     */
+    public Sheet getSheet(String nomenclature) {
+        return nomenclatures.get(nomenclature);
+    }
+
+    /**
+     * Sheets of scale.
+     * @param scale denominator of scale.
+     * @return sheets.
+     */
+    public List<Sheet> getSheetsByScale(int scale) {
+        List<Sheet> result = new ArrayList<>();
+        for (Sheet sheet : sheets) {
+            if (sheet.getScale() == scale) {
+                result.add(sheet);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sheets which frames intersect envelope, by rectangular coordinates (as geometries of records).
+     * Sheets of different zones have different coordinates, so use {@link #query(Envelope, int)} or
+     * {@link #queryBL(Envelope)} for catalog of many zones.
+     * @param envelope envelope.
+     * @return sheets.
+     */
+    public List<Sheet> query(Envelope envelope) {
+        return query(framesXY, envelope, 0);
+    }
+
+    /**
+     * Sheets of SRID which frames intersect envelope, by rectangular coordinates.
+     * @param envelope envelope.
+     * @param srid SRID of sheets.
+     * @return sheets.
+     */
+    public List<Sheet> query(Envelope envelope, int srid) {
+        return query(framesXY, envelope, srid);
+    }
+
+    /**
+     * Sheets which frames intersect envelope, by geodetic coordinates.
+     * @param envelope envelope, x is longitude and y is latitude in degrees.
+     * @return sheets.
+     */
+    public List<Sheet> queryBL(Envelope envelope) {
+        return query(framesBL, envelope, 0);
+    }
+
+    private List<Sheet> query(double[] frames, Envelope envelope, int srid) {
+        List<Sheet> result = new ArrayList<>();
+        if (envelope.isNull()) {
+            return result;
+        }
+        double minX = envelope.getMinX();
+        double minY = envelope.getMinY();
+        double maxX = envelope.getMaxX();
+        double maxY = envelope.getMaxY();
+        for (int i = 0, offset = 0; i < sheets.size(); i++, offset += 4) {
+            if (frames[offset] > maxX || frames[offset + 2] < minX || frames[offset + 1] > maxY || frames[offset + 3] < minY) {
+                continue;
+            }
+            Sheet sheet = sheets.get(i);
+            if (srid == 0 || sheet.getSrid() == srid) {
+                result.add(sheet);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sheet of catalog: file, passport and descriptor.
+     */
+    public static class Sheet {
+        private final File file;
+        private final SXFPassport sxfPassport;
+        private final SXFDescriptor sxfDescriptor;
+        private final Envelope envelopeXY;
+        private final Envelope envelopeBL;
+
+        Sheet(File file, SXFPassport sxfPassport, SXFDescriptor sxfDescriptor) {
+            this.file = file;
+            this.sxfPassport = sxfPassport;
+            this.sxfDescriptor = sxfDescriptor;
+            this.envelopeXY = envelope(sxfPassport.getXY());
+            this.envelopeBL = envelope(sxfPassport.getBL());
+        }
+
+        /**
+         * Envelope of frame, x and y swapped as in {@link SXFReader#getPassportXY()}.
+         */
+        private static Envelope envelope(double[][] arrays) {
+            Envelope envelope = new Envelope();
+            for (double[] array : arrays) {
+                envelope.expandToInclude(array[1], array[0]);
+            }
+            return envelope;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public SXFPassport getPassport() {
+            return sxfPassport;
+        }
+
+        public SXFDescriptor getDescriptor() {
+            return sxfDescriptor;
+        }
+
+        /**
+         * Frame of sheet by rectangular coordinates.
+         * @return envelope of frame.
+         */
+        public Envelope getEnvelope() {
+            return new Envelope(envelopeXY);
+        }
+
+        /**
+         * Frame of sheet by geodetic coordinates.
+         * @return envelope of frame, x is longitude and y is latitude in degrees.
+         */
+        public Envelope getEnvelopeBL() {
+            return new Envelope(envelopeBL);
+        }
+
+        public int getScale() {
+            return sxfPassport.getScale();
+        }
+
+        public String getNomenclature() {
+            return sxfPassport.getNomenclature();
+        }
+
+        public int getSrid() {
+            return sxfPassport.srid();
+        }
+
+        public int getRecordCount() {
+            return sxfDescriptor.getRecordCount();
+        }
+
+        /**
+         * Open reader of sheet.
+         * @param sxfReaderOptions options of reader.
+         * @return reader, must be closed.
+         * @throws IOException exception if wrong.
+         */
+        public SXFReader open(SXFReaderOptions sxfReaderOptions) throws IOException {
+            return new SXFReader(file, sxfReaderOptions);
+        }
+
+        @Override
+        public String toString() {
+            return file + " (" + getNomenclature() + ", 1:" + getScale() + ")";
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checksum of SXF file (see {@link SXFPassport#getCheckSum()}): sum of all bytes of file as signed values,
+ * without four bytes of checksum field, modulo 2^32.
+ * Bytes summed by eight per long word: byte xor 0x80 is unsigned byte plus 128, so unsigned sums
+ * of bytes accumulated in 16 bit lanes of long and corrected once per block. Large files summed
+ * by parts in fork/join pool.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+final class SXFCheckSum extends RecursiveTask<Long> {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Parts less than 8 MB not split.
+     */
+    private static final long THRESHOLD = 8L << 20;
+    private static final long SIGN_BITS = 0x8080808080808080L;
+    private static final long EVEN_BYTES = 0x00FF00FF00FF00FFL;
+    private static final long EVEN_SHORTS = 0x0000FFFF0000FFFFL;
+    /**
+     * Lane of 16 bits gets not more than 2 * 255 per word, so 128 words not overflow lane.
+     */
+    private static final int BLOCK_WORDS = 128;
+
+    private final SXFBuffer buffer;
+    private final long from;
+    private final long to;
+
+    private SXFCheckSum(SXFBuffer buffer, long from, long to) {
+        this.buffer = buffer;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Compute checksum of SXF file.
+     * @param buffer mapped file.
+     * @param checkSumOffset offset of checksum field in passport.
+     * @param forkJoinPool pool for large files.
+     * @return checksum.
+     */
+    static int compute(SXFBuffer buffer, long checkSumOffset, ForkJoinPool forkJoinPool) {
+        long limit = buffer.limit();
+        long sum = limit <= THRESHOLD ? sum(buffer, 0, limit) : forkJoinPool.invoke(new SXFCheckSum(buffer, 0, limit));
+        for (long i = checkSumOffset; i < checkSumOffset + 4 && i < limit; i++) {
+            sum -= buffer.get(i);
+        }
+        return (int) sum;
+    }
+
+    @Override
+    protected Long compute() {
+        if (to - from <= THRESHOLD) {
+            return sum(buffer, from, to);
+        }
+        long middle = from + (((to - from) >>> 1) & ~7L);
+        SXFCheckSum left = new SXFCheckSum(buffer, from, middle);
+        left.fork();
+        long right = new SXFCheckSum(buffer, middle, to).compute();
+        return left.join() + right;
+    }
+
+    /**
+     * Sum of signed bytes of range, range may cross segments.
+     */
+    private static long sum(SXFBuffer buffer, long from, long to) {
+        long sum = 0;
+        while (from < to) {
+            ByteBuffer segment = buffer.segment(from);
+            int index = buffer.index(from);
+            int end = (int) Math.min(segment.limit(), index + (to - from));
+            sum += sum(segment, index, end);
+            from += end - index;
+        }
+        return sum;
+    }
+
+    private static long sum(ByteBuffer segment, int from, int to) {
+        long sum = 0;
+        int i = from;
+        while (to - i >= 8) {
+            int words = Math.min((to - i) >>> 3, BLOCK_WORDS);
+            long lanes = 0;
+            for (int w = 0; w < words; w++, i += 8) {
+                long word = segment.getLong(i) ^ SIGN_BITS;
+                lanes += (word & EVEN_BYTES) + ((word >>> 8) & EVEN_BYTES);
+            }
+            long pairs = (lanes & EVEN_SHORTS) + ((lanes >>> 16) & EVEN_SHORTS);
+            sum += (pairs & 0xFFFFFFFFL) + (pairs >>> 32) - 128L * 8 * words;
+        }
+        for (; i < to; i++) {
+            sum += segment.get(i);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.impl.CoordinateArraySequence;
+import org.cleanlogic.sxf4j.enums.MetricElementSize;
+
+/**
+ * Read-only coordinate sequence over record metric in mapped SXF file. Ordinates read from buffer
+ * on each access, with element size and descrets conversion of record, nothing copied.
+ * Sequence may have extra points after metric points, they repeat first point (clone point of line, close of ring).
+ * Sequence valid only while {@link SXFReader} is open.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public final class SXFCoordinateSequence implements CoordinateSequence {
+    private final SXFBuffer buffer;
+    /**
+     * Offset of first point in buffer.
+     */
+    private final long offset;
+    /**
+     * Count of points in metric.
+     */
+    private final int count;
+    /**
+     * Size of sequence, not less than count.
+     */
+    private final int size;
+    private final MetricElementSize metricElementSize;
+    private final boolean is3D;
+    /**
+     * Size of one point in metric, in bytes.
+     */
+    private final int pointSize;
+    /**
+     * Passport for descrets conversion, null if metric in metres.
+     */
+    private final SXFPassport sxfPassport;
+
+    SXFCoordinateSequence(SXFBuffer buffer, long offset, int count, int size, MetricElementSize metricElementSize,
+                          boolean is3D, int pointSize, SXFPassport sxfPassport) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.count = count;
+        this.size = Math.max(size, count);
+        this.metricElementSize = metricElementSize;
+        this.is3D = is3D;
+        this.pointSize = pointSize;
+        this.sxfPassport = sxfPassport;
+    }
+
+    /**
+     * Same metric with other count of points and size of sequence.
+     * @param count count of points from metric, not more than current count.
+     * @param size size of sequence.
+     * @return new sequence.
+     */
+    SXFCoordinateSequence resize(int count, int size) {
+        count = Math.min(count, this.count);
+        if (count == this.count && size == this.size) {
+            return this;
+        }
+        return new SXFCoordinateSequence(buffer, offset, count, size, metricElementSize, is3D, pointSize, sxfPassport);
+    }
+
+    /**
+     * Read value of metric point.
+     * @param index index of point.
+     * @param value index of value in point: 0 - x, 1 - y, 2 - h.
+     * @return value as stored in metric.
+     */
+    private double read(int index, int value) {
+        if (index >= count) {
+            index = 0;
+        }
+        long position = offset + (long) index * pointSize;
+        switch (metricElementSize) {
+            case SHORT:
+                return value < 2 ? buffer.getShort(position + value * 2) : buffer.getFloat(position + 4);
+            case INT:
+                return value < 2 ? buffer.getInt(position + value * 4) : buffer.getFloat(position + 8);
+            case FLOAT:
+                return buffer.getFloat(position + value * 4);
+            case DOUBLE:
+                return buffer.getDouble(position + value * 8);
+            default:
+                return 0.;
+        }
+    }
+
+    @Override
+    public int getDimension() {
+        return 3;
+    }
+
+    @Override
+    public Coordinate getCoordinate(int i) {
+        return getCoordinateCopy(i);
+    }
+
+    @Override
+    public Coordinate getCoordinateCopy(int i) {
+        return new Coordinate(getX(i), getY(i), getOrdinate(i, Z));
+    }
+
+    @Override
+    public void getCoordinate(int index, Coordinate coord) {
+        coord.x = getX(index);
+        coord.y = getY(index);
+        coord.z = getOrdinate(index, Z);
+    }
+
+    /**
+     * X of sequence is second value of metric point.
+     */
+    @Override
+    public double getX(int index) {
+        double y = read(index, 1);
+        if (y == 8000000.0) {
+            y += 0.000001;
+        }
+        return sxfPassport != null ? sxfPassport.descretsToMetresY(y) : y;
+    }
+
+    /**
+     * Y of sequence is first value of metric point.
+     */
+    @Override
+    public double getY(int index) {
+        double x = read(index, 0);
+        return sxfPassport != null ? sxfPassport.descretsToMetresX(x) : x;
+    }
+
+    @Override
+    public double getOrdinate(int index, int ordinateIndex) {
+        switch (ordinateIndex) {
+            case X:
+                return getX(index);
+            case Y:
+                return getY(index);
+            case Z:
+                return is3D ? read(index, 2) : 0.;
+            default:
+                return Double.NaN;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Sequence is read-only.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public void setOrdinate(int index, int ordinateIndex, double value) {
+        throw new UnsupportedOperationException("SXF coordinate sequence is read-only");
+    }
+
+    @Override
+    public Coordinate[] toCoordinateArray() {
+        Coordinate[] coordinates = new Coordinate[size];
+        for (int i = 0; i < size; i++) {
+            coordinates[i] = getCoordinateCopy(i);
+        }
+        return coordinates;
+    }
+
+    @Override
+    public Envelope expandEnvelope(Envelope env) {
+        for (int i = 0; i < count; i++) {
+            env.expandToInclude(getX(i), getY(i));
+        }
+        return env;
+    }
+
+    /**
+     * Clone is mutable copy of sequence, not depends on buffer.
+     * @return {@link CoordinateArraySequence} with same coordinates.
+     */
+    @Override
+    public Object clone() {
+        return new CoordinateArraySequence(toCoordinateArray());
+    }
+
+    @Override
+    public String toString() {
+        return new CoordinateArraySequence(toCoordinateArray()).toString();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+import com.vividsolutions.jts.geom.impl.CoordinateArraySequenceFactory;
+
+import java.io.Serializable;
+
+/**
+ * Factory which tells {@link SXFRecord} to build geometries over {@link SXFCoordinateSequence},
+ * read-only sequences backed by metric in mapped SXF file. Set it by {@link SXFReaderOptions#coordinateSequenceFactory}.
+ * Sequences created by JTS itself (operations, clone and etc.) are usual {@link com.vividsolutions.jts.geom.impl.CoordinateArraySequence}.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public final class SXFCoordinateSequenceFactory implements CoordinateSequenceFactory, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final SXFCoordinateSequenceFactory INSTANCE = new SXFCoordinateSequenceFactory();
+
+    private SXFCoordinateSequenceFactory() {
+    }
+
+    public static SXFCoordinateSequenceFactory instance() {
+        return INSTANCE;
+    }
+
+    private Object readResolve() {
+        return INSTANCE;
+    }
+
+    @Override
+    public CoordinateSequence create(Coordinate[] coordinates) {
+        return CoordinateArraySequenceFactory.instance().create(coordinates);
+    }
+
+    @Override
+    public CoordinateSequence create(CoordinateSequence coordinateSequence) {
+        return CoordinateArraySequenceFactory.instance().create(coordinateSequence);
+    }
+
+    @Override
+    public CoordinateSequence create(int size, int dimension) {
+        return CoordinateArraySequenceFactory.instance().create(size, dimension);
+    }
+}
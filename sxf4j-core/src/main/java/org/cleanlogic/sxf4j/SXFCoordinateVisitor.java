@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.io.IOException;
+
+/**
+ * Visitor of record coordinates, see {@link SXFRecord#visitCoordinates(SXFCoordinateVisitor, int)}.
+ * Coordinates are delivered by chunks of fixed size, so big records (millions of points) can be
+ * exported without geometry and without array of all points.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public interface SXFCoordinateVisitor {
+    /**
+     * Begin of metric part. Part 0 is main record, parts 1...subrecordCount are subrecords.
+     * @param part number of part.
+     * @param pointCount count of points in part.
+     * @throws IOException exception if wrong.
+     */
+    void part(int part, int pointCount) throws IOException;
+
+    /**
+     * Chunk of points of current part, in same coordinates as points of geometry.
+     * @param coordinates packed x, y, z of points. Array is reused for next chunk.
+     * @param count count of points in chunk.
+     * @throws IOException exception if wrong.
+     */
+    void coordinates(double[] coordinates, int count) throws IOException;
+}
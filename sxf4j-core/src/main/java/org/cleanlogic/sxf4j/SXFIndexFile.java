@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Sidecar index file (.sxfidx) of SXF file: columns of record headers and envelopes of records.
+ * File is mapped on open, so reader not scan record headers again.
+ * Index valid while length, modification time and header (passport and descriptor) of SXF file not changed.
+ * <pre>
+ * Header (64 bytes, little endian):
+ *  0 int    magic
+ *  4 int    version
+ *  8 long   length of SXF file
+ * 16 long   modification time of SXF file
+ * 24 long   CRC32 of passport and descriptor
+ * 32 int    offset of first record
+ * 36 int    options of scan (1 - findNext)
+ * 40 int    count of records
+ * 44 int    1 if envelopes present
+ * Columns: offsets (long), lengths, excodes, numbers, flags (int each),
+ * envelopes (four double per record, aligned to 8 bytes).
+ * </pre>
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+final class SXFIndexFile {
+    static final String EXTENSION = ".sxfidx";
+    private static final int MAGIC = 0x58444958;
+    private static final int VERSION = 3;
+    private static final int HEADER_LENGTH = 64;
+    private static final int FIND_NEXT = 1;
+
+    private SXFIndexFile() {
+    }
+
+    /**
+     * Index file of SXF file. Without directory index is next to SXF file, otherwise in directory
+     * with hash of full path in name, so sheets with same names not overlap.
+     * @param file SXF file.
+     * @param directory directory of index files or null.
+     * @return index file.
+     */
+    static File indexFile(File file, File directory) {
+        if (directory == null) {
+            return new File(file.getAbsoluteFile().getParentFile(), file.getName() + EXTENSION);
+        }
+        String hash = Integer.toHexString(file.getAbsolutePath().hashCode());
+        return new File(directory, file.getName() + "." + hash + EXTENSION);
+    }
+
+    /**
+     * CRC32 of bytes before first record (passport and descriptor).
+     * @param buffer mapped SXF file.
+     * @param recordsOffset offset of first record.
+     * @return checksum.
+     */
+    static long headerChecksum(SXFBuffer buffer, int recordsOffset) {
+        byte[] header = new byte[recordsOffset];
+        buffer.get(0, header);
+        CRC32 crc32 = new CRC32();
+        crc32.update(header);
+        return crc32.getValue();
+    }
+
+    private static long envelopesOffset(int count) {
+        long offset = HEADER_LENGTH + (long) count * (8 + 4 * 4);
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Length of index file, in long because it can be more than one buffer holds.
+     */
+    private static long length(int count, boolean envelopes) {
+        return envelopes ? envelopesOffset(count) + (long) count * 4 * 8 : HEADER_LENGTH + (long) count * (8 + 4 * 4);
+    }
+
+    /**
+     * Map index file and check it is index of SXF file.
+     * @param indexFile index file.
+     * @param file SXF file.
+     * @param headerChecksum checksum of passport and descriptor, see {@link #headerChecksum(SXFBuffer, int)}.
+     * @param recordsOffset offset of first record.
+     * @param findNext option of scan.
+     * @return index over mapped file, or null if index not exists or invalid.
+     */
+    static SXFRecordIndex read(File indexFile, File file, long headerChecksum, int recordsOffset, boolean findNext) {
+        if (!indexFile.isFile() || indexFile.length() < HEADER_LENGTH || indexFile.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } catch (IOException e) {
+            return null;
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION ||
+                mapped.getLong(8) != file.length() || mapped.getLong(16) != file.lastModified() ||
+                mapped.getLong(24) != headerChecksum || mapped.getInt(32) != recordsOffset ||
+                mapped.getInt(36) != (findNext ? FIND_NEXT : 0)) {
+            return null;
+        }
+        int count = mapped.getInt(40);
+        boolean envelopes = mapped.getInt(44) == 1;
+        if (count < 0 || mapped.capacity() != length(count, envelopes)) {
+            return null;
+        }
+        int offset = HEADER_LENGTH;
+        LongBuffer offsets = column(mapped, offset, count * 8).asLongBuffer();
+        IntBuffer lengths = intColumn(mapped, offset += count * 8, count);
+        IntBuffer excodes = intColumn(mapped, offset += count * 4, count);
+        IntBuffer numbers = intColumn(mapped, offset += count * 4, count);
+        IntBuffer flags = intColumn(mapped, offset + count * 4, count);
+        DoubleBuffer envelopeColumn = null;
+        if (envelopes) {
+            envelopeColumn = column(mapped, (int) envelopesOffset(count), count * 4 * 8).asDoubleBuffer();
+        }
+        return new SXFRecordIndex(count, offsets, lengths, excodes, numbers, flags, envelopeColumn);
+    }
+
+    private static IntBuffer intColumn(ByteBuffer mapped, int offset, int count) {
+        return column(mapped, offset, count * 4).asIntBuffer();
+    }
+
+    private static ByteBuffer column(ByteBuffer mapped, int offset, int length) {
+        ByteBuffer column = mapped.duplicate();
+        column.position(offset);
+        column.limit(offset + length);
+        return column.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Write index file. File written into temporary file and then moved, so readers never see part of index.
+     * Index more than one buffer holds is not written, reader scans records on each open.
+     * @param indexFile index file.
+     * @param file SXF file.
+     * @param headerChecksum checksum of passport and descriptor, see {@link #headerChecksum(SXFBuffer, int)}.
+     * @param recordsOffset offset of first record.
+     * @param findNext option of scan.
+     * @param sxfRecordIndex index for write.
+     * @throws IOException exception if wrong.
+     */
+    static void write(File indexFile, File file, long headerChecksum, int recordsOffset, boolean findNext,
+                      SXFRecordIndex sxfRecordIndex) throws IOException {
+        int count = sxfRecordIndex.size();
+        boolean envelopes = sxfRecordIndex.hasEnvelopes();
+        long length = length(count, envelopes);
+        if (length > Integer.MAX_VALUE) {
+            System.err.println("Index of " + count + " records is too big for index file, " + indexFile + " skipped");
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(file.length());
+        buffer.putLong(file.lastModified());
+        buffer.putLong(headerChecksum);
+        buffer.putInt(recordsOffset);
+        buffer.putInt(findNext ? FIND_NEXT : 0);
+        buffer.putInt(count);
+        buffer.putInt(envelopes ? 1 : 0);
+        buffer.position(HEADER_LENGTH);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(sxfRecordIndex.getOffset(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(sxfRecordIndex.getLength(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(sxfRecordIndex.getExcode(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(sxfRecordIndex.getNumber(i));
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(sxfRecordIndex.getFlags(i));
+        }
+        if (envelopes) {
+            buffer.position((int) envelopesOffset(count));
+            for (int i = 0; i < count * 4; i++) {
+                buffer.putDouble(sxfRecordIndex.getEnvelopeValue(i));
+            }
+        }
+        buffer.flip();
+
+        File directory = indexFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory);
+        }
+        File tmpFile = File.createTempFile(indexFile.getName(), ".tmp", directory);
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw")) {
+                FileChannel fileChannel = raf.getChannel();
+                while (buffer.hasRemaining()) {
+                    fileChannel.write(buffer);
+                }
+            }
+            try {
+                Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                tmpFile.deleteOnExit();
+            }
+        }
+    }
+}
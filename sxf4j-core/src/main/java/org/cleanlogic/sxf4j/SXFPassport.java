@@ -21,6 +21,9 @@ import org.cleanlogic.sxf4j.enums.*;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Header(Passport) of SXF file format. Contains special data for read/write records, coordinate transformation and etc.
@@ -287,6 +290,10 @@ public class SXFPassport {
     private double dy0 = 0.;
 
     private boolean isReadOnly;
+    /**
+     * Descriptor, read with passport by {@link #readHeader(Path, boolean)}.
+     */
+    private SXFDescriptor sxfDescriptor;
 
     /**
      * Constructor of SXF file passport.
@@ -362,6 +369,59 @@ public class SXFPassport {
         srid = srid();
     }
 
+    /**
+     * Read passport and descriptor of file without reader, see {@link #readHeader(Path, boolean)}.
+     * @param path SXF file.
+     * @return passport, descriptor is {@link #getDescriptor()}.
+     * @throws IOException exception if wrong.
+     */
+    public static SXFPassport readHeader(Path path) throws IOException {
+        return readHeader(path, false);
+    }
+
+    /**
+     * Read passport and descriptor of file by one positional read of first bytes
+     * (passport and descriptor of version 4, 452 bytes), file is not mapped and records not read.
+     * Not SXF file (wrong identifier) or too short file always rejected. Offset of coordinate system
+     * ({@link #getDXY0()}) is detected by reader from border record, here it stays zero.
+     * @param path SXF file.
+     * @param strict Messages format on Exceptions.
+     * @return passport, descriptor is {@link #getDescriptor()}.
+     * @throws IOException exception if wrong.
+     */
+    public static SXFPassport readHeader(Path path, boolean strict) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_4 + SXFDescriptor.LENGTH_4).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (fileChannel.read(buffer, buffer.position()) < 0) {
+                    break;
+                }
+            }
+        }
+        buffer.flip();
+        if (buffer.remaining() < 4 || buffer.getInt(0) != IDENTIFIER) {
+            throw new IOException("Not SXF file: " + path);
+        }
+        SXFPassport sxfPassport = new SXFPassport();
+        SXFDescriptor sxfDescriptor = new SXFDescriptor(sxfPassport);
+        try {
+            sxfPassport.read(buffer, strict);
+            sxfDescriptor.read(buffer, strict);
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected end of SXF file: " + path, e);
+        }
+        sxfPassport.sxfDescriptor = sxfDescriptor;
+        return sxfPassport;
+    }
+
+    /**
+     * Descriptor read with passport by {@link #readHeader(Path, boolean)}.
+     * @return descriptor or null if passport read by reader.
+     */
+    public SXFDescriptor getDescriptor() {
+        return sxfDescriptor;
+    }
+
     /**
      * Current version of opened SXF file.
      * @return current version.
@@ -374,6 +434,14 @@ public class SXFPassport {
         return checkSum;
     }
 
+    /**
+     * Offset of checksum field in file, it not included into checksum.
+     * @return offset of checksum.
+     */
+    int getCheckSumOffset() {
+        return length == LENGTH_3 ? 10 : 12;
+    }
+
     /**
      * Get length of 
      * @return length of passport (must be 256 or 400).
@@ -475,6 +543,48 @@ public class SXFPassport {
         dy0 = dxy0[1];
     }
 
+    /**
+     * Convert x (first value of metric point) from descrets into metres.
+     * @param x x in descrets.
+     * @return x in metres.
+     */
+    double descretsToMetresX(double x) {
+        return xSouthWest + (x - xBorderDeviceSouthWest) / (double) deviceCapability * scale + dx0;
+    }
+
+    /**
+     * Convert y (second value of metric point) from descrets into metres.
+     * @param y y in descrets.
+     * @return y in metres.
+     */
+    double descretsToMetresY(double y) {
+        return ySouthWest + (y - yBorderDeviceSouthWest) / (double) deviceCapability * scale + dy0;
+    }
+
+    /**
+     * Convert packed coordinates of record metric from descrets into metres in place, without allocations.
+     * Coordinates packed by three ordinates {y, x, z}, as they returned by record.
+     * Order of operations same as for each point, so result not depends on way of decoding.
+     * @param coordinates packed coordinates.
+     * @param from index of first ordinate.
+     * @param to index after last ordinate.
+     */
+    void descretsToMetres(double[] coordinates, int from, int to) {
+        // Coefficients of transform, once for all points
+        double originX = xSouthWest;
+        double originY = ySouthWest;
+        double deviceX = xBorderDeviceSouthWest;
+        double deviceY = yBorderDeviceSouthWest;
+        double capability = deviceCapability;
+        double scale = this.scale;
+        double dx0 = this.dx0;
+        double dy0 = this.dy0;
+        for (int i = from; i < to; i += 3) {
+            coordinates[i] = originY + (coordinates[i] - deviceY) / capability * scale + dy0;
+            coordinates[i + 1] = originX + (coordinates[i + 1] - deviceX) / capability * scale + dx0;
+        }
+    }
+
     /**
      * Set projection flag, in version 4 they contains into {@link SXFDescriptor}.
      * @param projectionFlag projection data flag.
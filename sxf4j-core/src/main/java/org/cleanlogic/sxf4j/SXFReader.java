@@ -17,33 +17,73 @@
 package org.cleanlogic.sxf4j;
 
 import com.vividsolutions.jts.geom.*;
+import org.cleanlogic.sxf4j.enums.Local;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Main class of access to SXF file format.
  * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
  */
-public class SXFReader {
+public class SXFReader implements Closeable {
+    private final File file;
     private ReadableByteChannel readableByteChannel;
-    private ByteBuffer buffer;
+    /**
+     * Mapped file, by segments if file is large.
+     */
+    private SXFBuffer buffer;
 
     private SXFPassport sxfPassport;
     private SXFDescriptor sxfDescriptor;
 
-    private List<SXFRecord> sxfRecords = new ArrayList<>();
+    private final SXFReaderOptions sxfReaderOptions;
+    /**
+     * Position of first record (end of descriptor).
+     */
+    private int recordsOffset;
+    /**
+     * True if all record headers scanned into {@link #sxfRecordIndex}.
+     */
+    private volatile boolean scanned = false;
+    /**
+     * Headers of all records. Records created from index by request.
+     */
+    private SXFRecordIndex sxfRecordIndex;
+    /**
+     * R-tree of record envelopes, built on first spatial query.
+     */
+    private volatile SXFSpatialIndex spatialIndex;
+    /**
+     * True after offset of coordinate system detected by border record.
+     */
+    private boolean borderDetected = false;
+    /**
+     * Index scanned before detect of border record: envelopes need offset and index file not written.
+     */
+    private boolean indexPending = false;
 
     /**
      * Factory for create geometries
      */
     private GeometryFactory geometryFactory;
+    /**
+     * Repeated texts and semantics of records
+     */
+    private final SXFStringTable sxfStringTable = new SXFStringTable(SXFStringTable.DEFAULT_SIZE);
 
     public SXFReader(File file) throws IOException {
         this(file, false, false);
@@ -61,34 +101,461 @@ public class SXFReader {
      * @throws IOException
      */
     public SXFReader(File file, boolean strict, boolean findNext) throws IOException {
-        RandomAccessFile raf = new RandomAccessFile(file, "r");
-        readableByteChannel = raf.getChannel();
-        buffer = ((FileChannel)readableByteChannel).map(FileChannel.MapMode.READ_ONLY, 0, ((FileChannel) readableByteChannel).size());
+        this(file, options(strict, findNext));
+    }
+
+    /**
+     * Constructor of SXF file format reader.
+     * @param file file of SXF format for read
+     * @param sxfReaderOptions options of reader, see {@link SXFReaderOptions}.
+     * @throws IOException
+     */
+    public SXFReader(File file, SXFReaderOptions sxfReaderOptions) throws IOException {
+        this(file, new RandomAccessFile(file, "r").getChannel(), sxfReaderOptions);
+    }
+
+    private SXFReader(File file, FileChannel fileChannel, SXFReaderOptions sxfReaderOptions) throws IOException {
+        this(file, fileChannel, map(fileChannel, sxfReaderOptions.segmentShift), sxfReaderOptions);
+    }
+
+    /**
+     * Map file, channel closed if map failed.
+     */
+    private static SXFBuffer map(FileChannel fileChannel, int segmentShift) throws IOException {
+        try {
+            return SXFBuffer.map(fileChannel, segmentShift);
+        } catch (IOException | RuntimeException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Constructor of reader over ready buffer, for example entry of archive (see {@link SXFArchive}).
+     * @param file file of SXF, null if SXF is not separate file. Without file sidecar index not used.
+     * @param readableByteChannel channel closed by {@link #close()} or if constructor failed, or null.
+     * @param buffer buffer of SXF.
+     * @param sxfReaderOptions options of reader.
+     * @throws IOException exception if wrong.
+     */
+    SXFReader(File file, ReadableByteChannel readableByteChannel, SXFBuffer buffer, SXFReaderOptions sxfReaderOptions)
+            throws IOException {
+        this.file = file;
+        this.sxfReaderOptions = sxfReaderOptions;
+        this.readableByteChannel = readableByteChannel;
+        this.buffer = buffer;
+        try {
+            open();
+        } catch (IOException | RuntimeException e) {
+            // Reader not created, so caller can't close channel
+            try {
+                close();
+            } catch (IOException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Read passport and descriptor, verify checksum and load index of records.
+     * @throws IOException exception if wrong.
+     */
+    private void open() throws IOException {
+        // Passport and descriptor are in first segment
+        ByteBuffer header = buffer.firstSegment();
 
         sxfPassport = new SXFPassport();
-        sxfPassport.read(buffer, strict);
+        sxfPassport.read(header, sxfReaderOptions.strict);
 
         // Set srid for factory
-        geometryFactory = new GeometryFactory(new PrecisionModel(PrecisionModel.FLOATING), sxfPassport.srid());
+        if (sxfReaderOptions.coordinateSequenceFactory != null) {
+            geometryFactory = new GeometryFactory(new PrecisionModel(PrecisionModel.FLOATING), sxfPassport.srid(),
+                    sxfReaderOptions.coordinateSequenceFactory);
+        } else {
+            geometryFactory = new GeometryFactory(new PrecisionModel(PrecisionModel.FLOATING), sxfPassport.srid());
+        }
 
         sxfDescriptor = new SXFDescriptor(sxfPassport);
-        sxfDescriptor.read(buffer, strict);
-        // Now we can read records.
-        while (buffer.remaining() >= 32) {
-            SXFRecord sxfRecord = new SXFRecord(sxfPassport, geometryFactory);
-            sxfRecord.read(buffer, strict, findNext);
-            sxfRecords.add(sxfRecord);
+        sxfDescriptor.read(header, sxfReaderOptions.strict);
+        recordsOffset = header.position();
+        if (sxfReaderOptions.verifyCheckSum) {
+            int checkSum = calculateCheckSum();
+            if (checkSum != sxfPassport.getCheckSum()) {
+                String message = String.format("Wrong checksum of SXF: passport %d, computed %d",
+                        sxfPassport.getCheckSum(), checkSum);
+                if (sxfReaderOptions.strict) {
+                    throw new IOException(message);
+                }
+                System.err.println(message);
+            }
+        }
+        // Now we can read records. In streaming mode they will be read on demand.
+        if (!sxfReaderOptions.streaming) {
+            loadIndex();
         }
         // Need find border record and set dx0 and dy0 for passport
-        List<SXFRecord> borderRecords = getRecordByExcode(sxfPassport.getBorderExcode());
-        if (borderRecords.size() > 0) {
-            SXFRecord borderRecord = borderRecords.get(0);
+        SXFRecord borderRecord = findBorderRecord();
+        if (borderRecord != null) {
             Geometry geometry = borderRecord.geometry();
             double dx0 = sxfPassport.getXY()[0][0] - geometry.getCoordinates()[0].y;
             double dy0 = sxfPassport.getXY()[0][1] - geometry.getCoordinates()[0].x;
             sxfPassport.setDXY0(new double[] {dx0, dy0});
             borderRecord.destroy();
         }
+        borderDetected = true;
+        if (indexPending) {
+            indexPending = false;
+            // Envelopes computed on scan without offset, offset is added last in transform, so result is same
+            if (sxfRecordIndex.hasEnvelopes() && sxfPassport.isDescrets()) {
+                double[] dxy0 = sxfPassport.getDXY0();
+                sxfRecordIndex.translateEnvelopes(dxy0[1], dxy0[0]);
+            }
+            writeIndex();
+        }
+        if (sxfReaderOptions.spatialIndex && !sxfReaderOptions.streaming) {
+            spatialIndex();
+        }
+    }
+
+    private static SXFReaderOptions options(boolean strict, boolean findNext) {
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.strict = strict;
+        sxfReaderOptions.findNext = findNext;
+        return sxfReaderOptions;
+    }
+
+    /**
+     * Read all record headers into {@link #sxfRecordIndex}.
+     * @throws IOException exception if wrong.
+     */
+    private void scan(boolean envelopes) throws IOException {
+        // Record count from descriptor may be wrong, it's only capacity hint
+        int capacity = (int) Math.min(Math.max(sxfDescriptor.getRecordCount(), 0), (buffer.limit() - recordsOffset) / 32);
+        SXFRecordIndex sxfRecordIndex = new SXFRecordIndex(capacity);
+        double[] envelopeArray = envelopes ? new double[Math.max(capacity, 16) * 4] : null;
+        // One record object for read all headers
+        SXFRecord sxfRecord = new SXFRecord(sxfPassport, geometryFactory, sxfStringTable);
+        long position = recordsOffset;
+        while (position >= 0) {
+            position = sxfRecord.read(buffer, position, sxfReaderOptions.strict, sxfReaderOptions.findNext);
+            if (position >= 0) {
+                if (envelopes) {
+                    // Metric follows header, envelope computed while record is in cache
+                    int i = sxfRecordIndex.size() * 4;
+                    if (i == envelopeArray.length) {
+                        envelopeArray = Arrays.copyOf(envelopeArray, i + (i >> 1));
+                    }
+                    sxfRecord.envelope(envelopeArray, i);
+                }
+                sxfRecordIndex.add(sxfRecord);
+            }
+        }
+        sxfRecordIndex.complete();
+        if (envelopes) {
+            sxfRecordIndex.setEnvelopes(DoubleBuffer.wrap(Arrays.copyOf(envelopeArray, sxfRecordIndex.size() * 4)));
+        }
+        this.sxfRecordIndex = sxfRecordIndex;
+        scanned = true;
+    }
+
+    /**
+     * Load index of record headers: map sidecar index file if it valid, otherwise scan record headers
+     * and write sidecar index (see {@link SXFReaderOptions#sidecarIndex}).
+     * @throws IOException exception if wrong.
+     */
+    private void loadIndex() throws IOException {
+        boolean sidecar = sxfReaderOptions.sidecarIndex && file != null;
+        if (sidecar) {
+            SXFRecordIndex sxfRecordIndex = SXFIndexFile.read(indexFile(), file, SXFIndexFile.headerChecksum(buffer, recordsOffset),
+                    recordsOffset, sxfReaderOptions.findNext);
+            if (sxfRecordIndex != null) {
+                this.sxfRecordIndex = sxfRecordIndex;
+                scanned = true;
+                return;
+            }
+        }
+        scan(sidecar || sxfReaderOptions.spatialIndex);
+        if (borderDetected) {
+            writeIndex();
+        } else {
+            // Offset of coordinate system not known yet, see constructor
+            indexPending = true;
+        }
+    }
+
+    private File indexFile() {
+        return SXFIndexFile.indexFile(file, sxfReaderOptions.indexDirectory);
+    }
+
+    /**
+     * Write sidecar index file after scan, if it used. Error of write printed also in strict mode.
+     */
+    private void writeIndex() {
+        if (!sxfReaderOptions.sidecarIndex || file == null) {
+            return;
+        }
+        File indexFile = indexFile();
+        try {
+            SXFIndexFile.write(indexFile, file, SXFIndexFile.headerChecksum(buffer, recordsOffset), recordsOffset,
+                    sxfReaderOptions.findNext, sxfRecordIndex);
+        } catch (IOException e) {
+            // Index is only cache, reader works without it
+            System.err.println("Can't write index file " + indexFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Compute envelopes of all records from metric, without build of geometries. Used if envelopes
+     * not computed on scan.
+     */
+    private void computeEnvelopes() {
+        int count = sxfRecordIndex.size();
+        double[] envelopes = new double[count * 4];
+        SXFRecord sxfRecord = new SXFRecord(sxfPassport, geometryFactory, sxfStringTable);
+        for (int i = 0; i < count; i++) {
+            try {
+                sxfRecord.read(buffer, sxfRecordIndex.getOffset(i), sxfReaderOptions.strict);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            sxfRecord.envelope(envelopes, i * 4);
+        }
+        sxfRecordIndex.setEnvelopes(DoubleBuffer.wrap(envelopes));
+    }
+
+    /**
+     * Create record from index. Record header read by absolute offset, so records can be created
+     * and decoded from many threads.
+     * @param incode index of record.
+     * @return record with read header.
+     */
+    private SXFRecord createRecord(int incode) {
+        SXFRecord sxfRecord = new SXFRecord(sxfPassport, geometryFactory, sxfStringTable);
+        try {
+            sxfRecord.read(buffer, sxfRecordIndex.getOffset(incode), sxfReaderOptions.strict);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sxfRecord;
+    }
+
+    /**
+     * Scan record headers if they not scanned yet (streaming mode).
+     */
+    private void ensureScanned() {
+        if (scanned) {
+            return;
+        }
+        synchronized (this) {
+            if (scanned) {
+                return;
+            }
+            try {
+                loadIndex();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Find first record of sheet border. In streaming mode only headers before border record will be read.
+     * @return border record or null if not found.
+     */
+    private SXFRecord findBorderRecord() {
+        int borderExcode = sxfPassport.getBorderExcode();
+        if (scanned) {
+            List<SXFRecord> borderRecords = getRecordByExcode(borderExcode);
+            return borderRecords.size() > 0 ? borderRecords.get(0) : null;
+        }
+        for (SXFRecord sxfRecord : records()) {
+            if (sxfRecord.getExcode() == borderExcode) {
+                return sxfRecord;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records of sheet. In streaming mode ({@link SXFReaderOptions#streaming}) each record header
+     * read on demand when iterator advances, and records not stored by reader.
+     * @return iterable of records.
+     */
+    public Iterable<SXFRecord> records() {
+        return new Iterable<SXFRecord>() {
+            @Override
+            public Iterator<SXFRecord> iterator() {
+                if (scanned) {
+                    return new IndexIterator();
+                }
+                return new RecordIterator();
+            }
+        };
+    }
+
+    /**
+     * Records of sheet accepted by filter. If records scanned, excode, local and generalization checked
+     * by record index and envelope by R-tree (see {@link #query(Envelope)}), so not accepted records
+     * not created. Otherwise conditions checked by header of each record while iterate.
+     * @param sxfRecordFilter filter of records.
+     * @return iterable of accepted records.
+     */
+    public Iterable<SXFRecord> records(final SXFRecordFilter sxfRecordFilter) {
+        return new Iterable<SXFRecord>() {
+            @Override
+            public Iterator<SXFRecord> iterator() {
+                if (scanned) {
+                    int[] incodes = null;
+                    if (sxfRecordFilter.getEnvelope() != null) {
+                        incodes = spatialIndex().query(sxfRecordFilter.getEnvelope());
+                    }
+                    return new FilterIterator(sxfRecordFilter, incodes);
+                }
+                return new FilterIterator(sxfRecordFilter, new RecordIterator());
+            }
+        };
+    }
+
+    /**
+     * Iterator of records accepted by filter, over incodes of index or over other iterator.
+     */
+    private final class FilterIterator implements Iterator<SXFRecord> {
+        private final SXFRecordFilter sxfRecordFilter;
+        /**
+         * Candidates from R-tree, null if all records of index are candidates.
+         */
+        private final int[] incodes;
+        private final Iterator<SXFRecord> iterator;
+        private int i = 0;
+        private SXFRecord next;
+
+        private FilterIterator(SXFRecordFilter sxfRecordFilter, int[] incodes) {
+            this.sxfRecordFilter = sxfRecordFilter;
+            this.incodes = incodes;
+            this.iterator = null;
+        }
+
+        private FilterIterator(SXFRecordFilter sxfRecordFilter, Iterator<SXFRecord> iterator) {
+            this.sxfRecordFilter = sxfRecordFilter;
+            this.incodes = null;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (iterator != null) {
+                    if (!iterator.hasNext()) {
+                        return false;
+                    }
+                    SXFRecord sxfRecord = iterator.next();
+                    if (sxfRecordFilter.accept(sxfRecord)) {
+                        next = sxfRecord;
+                    }
+                    continue;
+                }
+                int size = incodes != null ? incodes.length : sxfRecordIndex.size();
+                if (i >= size) {
+                    return false;
+                }
+                int incode = incodes != null ? incodes[i] : i;
+                i++;
+                if (!sxfRecordFilter.acceptHeader(sxfRecordIndex.getExcode(incode), sxfRecordIndex.getFlags(incode))) {
+                    continue;
+                }
+                SXFRecord sxfRecord = createRecord(incode);
+                if (sxfRecordFilter.acceptSemantics(sxfRecord)) {
+                    next = sxfRecord;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public SXFRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SXFRecord sxfRecord = next;
+            next = null;
+            return sxfRecord;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Iterator over scanned index, records created on demand.
+     */
+    private final class IndexIterator implements Iterator<SXFRecord> {
+        private int incode = 0;
+
+        @Override
+        public boolean hasNext() {
+            return incode < sxfRecordIndex.size();
+        }
+
+        @Override
+        public SXFRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return createRecord(incode++);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Forward only iterator over record headers. Iterator has own position, so iterators and record
+     * decoding not shift position of each other.
+     */
+    private final class RecordIterator implements Iterator<SXFRecord> {
+        private long position = recordsOffset;
+        private SXFRecord next;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (position < 0) {
+                return false;
+            }
+            SXFRecord sxfRecord = new SXFRecord(sxfPassport, geometryFactory, sxfStringTable);
+            try {
+                position = sxfRecord.read(buffer, position, sxfReaderOptions.strict, sxfReaderOptions.findNext);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            if (position < 0) {
+                return false;
+            }
+            next = sxfRecord;
+            return true;
+        }
+
+        @Override
+        public SXFRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            SXFRecord sxfRecord = next;
+            next = null;
+            return sxfRecord;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     public SXFPassport getPassport() {
@@ -122,43 +589,262 @@ public class SXFReader {
         return geometryFactory.createPolygon(shell);
     }
 
+    /**
+     * Compute checksum of file by all bytes, large files computed in parallel.
+     * @return checksum.
+     * @see SXFPassport#getCheckSum()
+     */
+    public int calculateCheckSum() {
+        return SXFCheckSum.compute(buffer, sxfPassport.getCheckSumOffset(), SharedPool.POOL);
+    }
+
+    /**
+     * Check file integrity by checksum of passport.
+     * @return true if computed checksum equals to checksum of passport.
+     */
+    public boolean verifyCheckSum() {
+        return calculateCheckSum() == sxfPassport.getCheckSum();
+    }
+
     public SXFDescriptor getDescriptor() {
         return sxfDescriptor;
     }
 
     public int getCount() {
-        return sxfRecords.size();
+        ensureScanned();
+        return sxfRecordIndex.size();
+    }
+
+    /**
+     * Excode of record without create record.
+     * @param incode index of record.
+     * @return excode of record.
+     */
+    public int getExcode(int incode) {
+        ensureScanned();
+        checkIncode(incode);
+        return sxfRecordIndex.getExcode(incode);
+    }
+
+    /**
+     * Number of record without create record.
+     * @param incode index of record.
+     * @return number of record.
+     */
+    public int getNumber(int incode) {
+        ensureScanned();
+        checkIncode(incode);
+        return sxfRecordIndex.getNumber(incode);
+    }
+
+    /**
+     * Localization of record without create record.
+     * @param incode index of record.
+     * @return local of record.
+     */
+    public Local getLocal(int incode) {
+        ensureScanned();
+        checkIncode(incode);
+        return sxfRecordIndex.getLocal(incode);
     }
 
     public List<SXFRecord> getRecordByExcode(int excode) {
+        ensureScanned();
         List<SXFRecord> result = new ArrayList<>();
-        for (SXFRecord sxfRecord : sxfRecords) {
-            if (sxfRecord.getExcode() == excode) {
-                result.add(sxfRecord);
-            }
+        for (int i = sxfRecordIndex.firstByExcode(excode); i != IntMultiMap.NONE; i = sxfRecordIndex.nextByExcode(i)) {
+            result.add(createRecord(i));
         }
         return result;
     }
 
+    /**
+     * Create record by index. Each call returns new record object.
+     * @param incode index of record.
+     * @return record.
+     */
     public SXFRecord getRecordByIncode(int incode) {
-        return sxfRecords.get(incode);
+        ensureScanned();
+        checkIncode(incode);
+        return createRecord(incode);
+    }
+
+    /**
+     * Envelope of record geometry. If envelopes present in index (see {@link SXFReaderOptions#sidecarIndex})
+     * geometry not decoded.
+     * @param incode index of record.
+     * @return envelope of record, null if record has no points.
+     * @throws IOException exception if wrong.
+     */
+    public Envelope getEnvelope(int incode) throws IOException {
+        ensureScanned();
+        checkIncode(incode);
+        if (sxfRecordIndex.hasEnvelopes()) {
+            return sxfRecordIndex.getEnvelope(incode);
+        }
+        Geometry geometry = createRecord(incode).geometry();
+        return geometry == null || geometry.isEmpty() ? null : geometry.getEnvelopeInternal();
+    }
+
+    /**
+     * Records which envelopes intersect envelope. Envelopes of records (if they not computed on scan, see
+     * {@link SXFReaderOptions#spatialIndex}) and R-tree built at first call.
+     * @param envelope envelope of query in coordinates of geometries.
+     * @return records in order of incodes.
+     */
+    public List<SXFRecord> query(Envelope envelope) {
+        int[] incodes = spatialIndex().query(envelope);
+        List<SXFRecord> result = new ArrayList<>(incodes.length);
+        for (int incode : incodes) {
+            result.add(createRecord(incode));
+        }
+        return result;
+    }
+
+    private SXFSpatialIndex spatialIndex() {
+        ensureScanned();
+        SXFSpatialIndex spatialIndex = this.spatialIndex;
+        if (spatialIndex == null) {
+            synchronized (this) {
+                spatialIndex = this.spatialIndex;
+                if (spatialIndex == null) {
+                    if (!sxfRecordIndex.hasEnvelopes()) {
+                        computeEnvelopes();
+                    }
+                    spatialIndex = new SXFSpatialIndex(sxfRecordIndex);
+                    this.spatialIndex = spatialIndex;
+                }
+            }
+        }
+        return spatialIndex;
     }
 
     public SXFRecord getRecordByNumber(int number) {
-        for (SXFRecord sxfRecord : sxfRecords) {
-            if (sxfRecord.getNumber() == number) {
-                return sxfRecord;
+        ensureScanned();
+        int incode = sxfRecordIndex.firstByNumber(number);
+        if (incode == IntMultiMap.NONE) {
+            return null;
+        }
+        return createRecord(incode);
+    }
+
+    /**
+     * Decode geometries of all records in parallel, in shared fork/join pool.
+     * @return geometries of records, index of array is incode.
+     * @see #parallelGeometries(ForkJoinPool)
+     */
+    public Geometry[] parallelGeometries() {
+        return parallelGeometries(SharedPool.POOL);
+    }
+
+    /**
+     * Decode geometries of all records in parallel. Record index splits into incode ranges,
+     * each record decoded by own {@link SXFRecord} object from shared buffer.
+     * @param forkJoinPool pool for decode tasks.
+     * @return geometries of records, index of array is incode.
+     */
+    public Geometry[] parallelGeometries(ForkJoinPool forkJoinPool) {
+        ensureScanned();
+        int count = sxfRecordIndex.size();
+        Geometry[] geometries = new Geometry[count];
+        // Many small tasks for balance: records may have very different size
+        int threshold = Math.max(16, count / (forkJoinPool.getParallelism() * 16));
+        forkJoinPool.invoke(new GeometryTask(geometries, 0, count, threshold));
+        return geometries;
+    }
+
+    /**
+     * Decode geometries of incode range [from, to), split range while it more than threshold.
+     */
+    private final class GeometryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Geometry[] geometries;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        private GeometryTask(Geometry[] geometries, int from, int to, int threshold) {
+            this.geometries = geometries;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                for (int i = from; i < to; i++) {
+                    try {
+                        geometries[i] = createRecord(i).geometry();
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return;
             }
+            int middle = (from + to) >>> 1;
+            invokeAll(new GeometryTask(geometries, from, middle, threshold),
+                    new GeometryTask(geometries, middle, to, threshold));
+        }
+    }
+
+    /**
+     * Lazy holder of pool shared by all readers.
+     */
+    static final class SharedPool {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    private void checkIncode(int incode) {
+        if (incode < 0 || incode >= sxfRecordIndex.size()) {
+            throw new IndexOutOfBoundsException("Incode: " + incode + ", count: " + sxfRecordIndex.size());
         }
-        return null;
     }
 
+    /**
+     * Size of mapped part of file.
+     * @return size in bytes, 0 for data in heap (compressed entries of archives).
+     */
+    long getMappedSize() {
+        SXFBuffer buffer = this.buffer;
+        return buffer != null && buffer.isMapped() && !buffer.isClosed() ? buffer.limit() : 0;
+    }
+
+    /**
+     * Estimate of heap used by reader: record index, spatial index, table of strings and data of
+     * not mapped sheets. Indexes built on demand, so size grows with use of reader.
+     * @return size in bytes.
+     */
+    long getHeapSize() {
+        long bytes = sxfStringTable.heapSize();
+        SXFBuffer buffer = this.buffer;
+        if (buffer != null && !buffer.isMapped() && !buffer.isClosed()) {
+            bytes += buffer.limit();
+        }
+        SXFRecordIndex sxfRecordIndex = this.sxfRecordIndex;
+        if (sxfRecordIndex != null) {
+            bytes += sxfRecordIndex.heapSize();
+        }
+        SXFSpatialIndex spatialIndex = this.spatialIndex;
+        if (spatialIndex != null) {
+            bytes += spatialIndex.heapSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Close file. Mapping of file released now if {@link SXFReaderOptions#unmapOnClose}, otherwise by garbage collector.
+     * Records and geometries of unmapped reader can not be read after close, read throws {@link IllegalStateException}.
+     * @throws IOException exception if wrong.
+     */
+    @Override
     public void close() throws IOException {
-        if (readableByteChannel.isOpen()) {
+        if (readableByteChannel != null && readableByteChannel.isOpen()) {
             readableByteChannel.close();
         }
-        buffer.clear();
-        buffer = null;
+        // Buffer kept, so reads of unmapped buffer fail by exception
+        if (buffer != null && sxfReaderOptions.unmapOnClose) {
+            buffer.unmap();
+        }
         readableByteChannel = null;
     }
 }
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of open readers of sheets, for services which open sheets on demand. Size of cache limited by
+ * mapped bytes of files and by heap bytes of readers (indexes, see {@link SXFReader#getHeapSize()}).
+ * Reader acquired by {@link #acquire(File)} is not closed while handle is not closed. Readers not in use
+ * closed in order of last use (LRU) while cache is over limits. Lookup is lock-free, reader of sheet
+ * opened once by first thread.
+ * <pre>
+ * try (SXFReaderCache.Handle handle = sxfReaderCache.acquire(file)) {
+ *     SXFReader sxfReader = handle.getReader();
+ *     ...
+ * }
+ * </pre>
+ * Readers of cache always opened with {@link SXFReaderOptions#unmapOnClose}, so evicted reader releases
+ * mapping of file immediately. Reader of closed handle is not available, and records and geometries of
+ * evicted reader throw {@link IllegalStateException} on read, so keep handle open while records are used.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public class SXFReaderCache implements Closeable {
+    /**
+     * Count of references of evicted entry, it can not be acquired.
+     */
+    private static final int EVICTED = -1;
+    private static final Comparator<Entry> LRU = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry left, Entry right) {
+            return Long.compare(left.stamp, right.stamp);
+        }
+    };
+
+    private final long maxMappedSize;
+    private final long maxHeapSize;
+    private final SXFReaderOptions sxfReaderOptions;
+    private final ConcurrentMap<File, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong mappedSize = new AtomicLong();
+    private final AtomicLong heapSize = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    /**
+     * Count of open readers not in use, eviction skipped while it is zero.
+     */
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final Object evictLock = new Object();
+    private volatile boolean closed;
+
+    /**
+     * Create cache.
+     * @param maxMappedSize limit of mapped bytes of files.
+     * @param maxHeapSize limit of heap bytes of readers.
+     * @param sxfReaderOptions options of readers, copied, {@link SXFReaderOptions#unmapOnClose} is always set.
+     */
+    public SXFReaderCache(long maxMappedSize, long maxHeapSize, SXFReaderOptions sxfReaderOptions) {
+        this.maxMappedSize = maxMappedSize;
+        this.maxHeapSize = maxHeapSize;
+        this.sxfReaderOptions = sxfReaderOptions.copy();
+        this.sxfReaderOptions.unmapOnClose = true;
+    }
+
+    /**
+     * Get reader of file from cache or open it.
+     * @param file SXF file.
+     * @return handle of reader, must be closed.
+     * @throws IOException exception if wrong.
+     * @throws IllegalStateException if cache closed.
+     */
+    public Handle acquire(File file) throws IOException {
+        checkOpen();
+        File key = file.getAbsoluteFile();
+        Entry entry;
+        while (true) {
+            entry = entries.get(key);
+            if (entry == null) {
+                Entry created = new Entry(key);
+                entry = entries.putIfAbsent(key, created);
+                if (entry == null) {
+                    entry = created;
+                }
+            }
+            if (retain(entry)) {
+                break;
+            }
+            // Entry evicted between lookup and retain
+            entries.remove(key, entry);
+        }
+        entry.stamp = clock.incrementAndGet();
+        if (entry.reader != null) {
+            hitCount.incrementAndGet();
+        } else {
+            try {
+                open(entry);
+            } catch (IOException | RuntimeException e) {
+                // Entry without reader is not kept in cache
+                if (entry.references.decrementAndGet() == 0) {
+                    entry.references.compareAndSet(0, EVICTED);
+                }
+                throw e;
+            }
+        }
+        Handle handle = new Handle(entry);
+        if (closed) {
+            // Cache closed while reader opened
+            entries.remove(key, entry);
+            handle.close();
+            checkOpen();
+        }
+        evict();
+        return handle;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Cache of readers is closed");
+        }
+    }
+
+    /**
+     * Add user of entry.
+     * @return false if entry evicted.
+     */
+    private boolean retain(Entry entry) {
+        while (true) {
+            int count = entry.references.get();
+            if (count == EVICTED) {
+                return false;
+            }
+            if (entry.references.compareAndSet(count, count + 1)) {
+                if (count == 0 && entry.reader != null) {
+                    idleCount.decrementAndGet();
+                }
+                return true;
+            }
+        }
+    }
+
+    private void open(Entry entry) throws IOException {
+        synchronized (entry) {
+            if (entry.reader != null) {
+                hitCount.incrementAndGet();
+                return;
+            }
+            if (entry.exception != null) {
+                throw new IOException(entry.exception.getMessage(), entry.exception);
+            }
+            missCount.incrementAndGet();
+            try {
+                SXFReader sxfReader = new SXFReader(entry.file, sxfReaderOptions);
+                entry.mappedSize = sxfReader.getMappedSize();
+                entry.heapSize = sxfReader.getHeapSize();
+                mappedSize.addAndGet(entry.mappedSize);
+                heapSize.addAndGet(entry.heapSize);
+                entry.reader = sxfReader;
+            } catch (IOException | RuntimeException e) {
+                // Next acquire opens file again
+                entry.exception = e;
+                entries.remove(entry.file, entry);
+                throw e;
+            }
+        }
+    }
+
+    private void release(Entry entry) {
+        SXFReader sxfReader = entry.reader;
+        synchronized (entry) {
+            // Indexes of reader built on demand
+            long size = sxfReader.getHeapSize();
+            heapSize.addAndGet(size - entry.heapSize);
+            entry.heapSize = size;
+        }
+        if (entry.references.decrementAndGet() == 0) {
+            idleCount.incrementAndGet();
+            if (entries.get(entry.file) != entry) {
+                // Removed by close of cache
+                if (entry.references.compareAndSet(0, EVICTED)) {
+                    idleCount.decrementAndGet();
+                    discard(entry);
+                }
+            } else {
+                evict();
+            }
+        }
+    }
+
+    /**
+     * Close least recently used readers not in use while cache is over limits. Each sweep closes
+     * at least one reader or finds none, so readers in use over limits not sorted on each call.
+     */
+    private void evict() {
+        if (!isOverLimits() || idleCount.get() <= 0) {
+            return;
+        }
+        synchronized (evictLock) {
+            List<Entry> candidates = new ArrayList<>();
+            for (Entry entry : entries.values()) {
+                if (entry.references.get() == 0 && entry.reader != null) {
+                    candidates.add(entry);
+                }
+            }
+            Collections.sort(candidates, LRU);
+            for (Entry entry : candidates) {
+                if (!isOverLimits()) {
+                    break;
+                }
+                // Entry may be acquired after check
+                if (entry.references.compareAndSet(0, EVICTED)) {
+                    idleCount.decrementAndGet();
+                    entries.remove(entry.file, entry);
+                    evictionCount.incrementAndGet();
+                    discard(entry);
+                }
+            }
+        }
+    }
+
+    private boolean isOverLimits() {
+        return mappedSize.get() > maxMappedSize || heapSize.get() > maxHeapSize;
+    }
+
+    private void discard(Entry entry) {
+        mappedSize.addAndGet(-entry.mappedSize);
+        heapSize.addAndGet(-entry.heapSize);
+        try {
+            entry.reader.close();
+        } catch (IOException e) {
+            System.err.println("Close of " + entry.file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Count of acquires of readers which were open in cache.
+     * @return count of hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Count of acquires which opened reader.
+     * @return count of misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Count of readers closed because cache was over limits.
+     * @return count of evictions.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Mapped bytes of files of cache.
+     * @return size in bytes.
+     */
+    public long getMappedSize() {
+        return mappedSize.get();
+    }
+
+    /**
+     * Heap bytes of readers of cache, measured on open and on close of handles.
+     * @return size in bytes.
+     */
+    public long getHeapSize() {
+        return heapSize.get();
+    }
+
+    /**
+     * Count of files in cache.
+     * @return count of files.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Close readers not in use, readers in use closed on close of their handles. Cache can not be used after close.
+     * @throws IOException exception if wrong.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        for (Entry entry : entries.values()) {
+            entries.remove(entry.file, entry);
+            if (entry.reader != null && entry.references.compareAndSet(0, EVICTED)) {
+                idleCount.decrementAndGet();
+                discard(entry);
+            }
+        }
+    }
+
+    /**
+     * Reader of file with count of users.
+     */
+    private static final class Entry {
+        private final File file;
+        private final AtomicInteger references = new AtomicInteger();
+        private volatile SXFReader reader;
+        private volatile long stamp;
+        private Exception exception;
+        private long mappedSize;
+        private long heapSize;
+
+        private Entry(File file) {
+            this.file = file;
+        }
+    }
+
+    /**
+     * Acquired reader, close of handle returns reader into cache.
+     */
+    public final class Handle implements Closeable {
+        private final Entry entry;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        /**
+         * Reader of handle.
+         * @return reader.
+         * @throws IllegalStateException if handle closed.
+         */
+        public SXFReader getReader() {
+            if (closed.get()) {
+                throw new IllegalStateException("Handle of " + entry.file + " is closed");
+            }
+            return entry.reader;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                release(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.CoordinateSequenceFactory;
+
+import java.io.File;
+
+/**
+ * Options of {@link SXFReader}. Default values give the same behaviour as {@link SXFReader#SXFReader(java.io.File)}.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public class SXFReaderOptions {
+    /**
+     * Exceptions output. If true - IOException, otherwise message through println.
+     */
+    public boolean strict = false;
+    /**
+     * Find next record if {@link SXFRecord#IDENTIFIER} is wrong.
+     */
+    public boolean findNext = false;
+    /**
+     * Streaming mode. Record headers not scanned on open, they read on demand by {@link SXFReader#records()}.
+     * Random access functions (by incode, excode, number) scan headers at first call.
+     */
+    public boolean streaming = false;
+    /**
+     * Factory of coordinate sequences for geometries of records, null - JTS default.
+     * {@link SXFCoordinateSequenceFactory} gives read-only geometries over mapped metric without copy of coordinates,
+     * they valid only while reader is open. Not used by {@link SXFStreamReader}.
+     */
+    public CoordinateSequenceFactory coordinateSequenceFactory = null;
+    /**
+     * Use sidecar index file (.sxfidx) of record headers and envelopes. If index valid, it mapped instead of
+     * scan of record headers, otherwise index written after scan. Index rebuilt automatically if SXF file changed.
+     * Not used for entries of archives. Error of write of index only printed, also in strict mode.
+     */
+    public boolean sidecarIndex = false;
+    /**
+     * Directory of sidecar index files, null - index file next to SXF file.
+     */
+    public File indexDirectory = null;
+    /**
+     * Compute envelopes of records on scan of headers and build R-tree for {@link SXFReader#query(com.vividsolutions.jts.geom.Envelope)}
+     * on open. Otherwise they computed at first query.
+     */
+    public boolean spatialIndex = false;
+    /**
+     * Verify checksum of file on open (see {@link SXFReader#verifyCheckSum()}). Wrong checksum is
+     * IOException in strict mode, otherwise message.
+     */
+    public boolean verifyCheckSum = false;
+    /**
+     * Release mapping of file on {@link SXFReader#close()}, otherwise mapping released by garbage collector.
+     * Records and geometries of {@link SXFCoordinateSequenceFactory} read from reader can not be used
+     * after close, read throws {@link IllegalStateException}. Reader must not be closed while other thread
+     * reads it, read of unmapped memory crashes JVM.
+     */
+    public boolean unmapOnClose = false;
+    /**
+     * Size of mapped segment of file is 2^segmentShift bytes. Changed only by tests for check of segment borders.
+     */
+    int segmentShift = SXFBuffer.DEFAULT_SHIFT;
+
+    /**
+     * Copy of options.
+     * @return new options with same values.
+     */
+    SXFReaderOptions copy() {
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.strict = strict;
+        sxfReaderOptions.findNext = findNext;
+        sxfReaderOptions.streaming = streaming;
+        sxfReaderOptions.coordinateSequenceFactory = coordinateSequenceFactory;
+        sxfReaderOptions.sidecarIndex = sidecarIndex;
+        sxfReaderOptions.indexDirectory = indexDirectory;
+        sxfReaderOptions.spatialIndex = spatialIndex;
+        sxfReaderOptions.verifyCheckSum = verifyCheckSum;
+        sxfReaderOptions.unmapOnClose = unmapOnClose;
+        sxfReaderOptions.segmentShift = segmentShift;
+        return sxfReaderOptions;
+    }
+}
@@ -17,12 +17,15 @@
 package org.cleanlogic.sxf4j;
 
 import com.vividsolutions.jts.geom.*;
+import com.vividsolutions.jts.geom.impl.PackedCoordinateSequence;
 import org.cleanlogic.sxf4j.enums.*;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -30,11 +33,27 @@ import java.util.List;
  */
 public class SXFRecord {
     public static final int IDENTIFIER = 0x7FFF7FFF;
+    /**
+     * Identifier of graphic description in metric.
+     */
+    public static final int GRAPHIC_IDENTIFIER = 0x7FFF7FFE;
+    /**
+     * Powers of 10 for scales of numeric semantics: POW10[scale + 127] is 10^scale.
+     */
+    private static final double[] POW10 = new double[255];
+    static {
+        for (int i = 0; i < POW10.length; i++) {
+            POW10[i] = Math.pow(10., i - 127);
+        }
+    }
+    private static final Charset IBM866 = Charset.forName(TextEncoding.IBM866.getName());
+    private static final Charset CP1251 = Charset.forName(TextEncoding.CP1251.getName());
+    private static final Charset KOI8R = Charset.forName(TextEncoding.KOI8R.getName());
 
     /**
      * Record offset in global ByteBuffer position (from begin).
      */
-    private int offset;
+    private long offset;
     /**
      * Identifier of begin data {@link #IDENTIFIER}.
      */
@@ -59,6 +78,10 @@ public class SXFRecord {
      * Localization of object {@link Local}
      */
     private Local local;
+    /**
+     * Raw info flags (3 bytes) and generalization (1 byte) of record header.
+     */
+    private int flags;
     /**
      * Only {@link SXFPassport#VERSION_3}
      */
@@ -73,7 +96,7 @@ public class SXFRecord {
      */
     private boolean isMultiPolygon;
     /**
-     * Flag if polygon is Multi
+     * Graphic description is compressed. Metric is not compressed by this flag.
      * Only {@link SXFPassport#VERSION_4}
      */
     private boolean isCompressible;
@@ -138,6 +161,10 @@ public class SXFRecord {
      * Available graphic is scale
      */
     private boolean isGraphicScale;
+    /**
+     * Graphic description, read by request
+     */
+    private volatile Graphic graphic;
     /**
      * Build spline by metric. Only for {@link SXFPassport#VERSION_4}, for {@link SXFPassport#VERSION_3} is {@link Spline#NO_SPLINE}
      */
@@ -173,32 +200,45 @@ public class SXFRecord {
     /**
      * Byte offset for begin metric block
      */
-    private int metricOffset;
+    private long metricOffset;
     /**
      * Byte offset for begin seamntics block
      */
-    private int semanticOffset;
+    private long semanticOffset;
 
     /**
      * Current buffer from which readed record header. Need for read geometry by request.
+     * Geometry, texts and semantics read by absolute offsets, buffer position not changed.
      */
-    private ByteBuffer buffer;
+    private SXFBuffer buffer;
 
     /**
      * Record geometry, in metres, in map projection.
      */
-    private Geometry geometry;
+    private volatile Geometry geometry;
     /**
      * List of text signatures.
      */
-    private List<Text> texts = new ArrayList<>();
+    private volatile List<Text> texts = new ArrayList<>();
+    /**
+     * Texts read, see {@link #texts()}.
+     */
+    private volatile boolean isTextRead;
     /**
      * List of semantics
      */
-    private List<Semantic> semantics = new ArrayList<>();
+    private volatile List<Semantic> semantics = new ArrayList<>();
+    /**
+     * Codes and offsets of semantics, see {@link #semantic(int)}.
+     */
+    private volatile int[] semanticTable;
 
     private final SXFPassport sxfPassport;
     private final GeometryFactory geometryFactory;
+    /**
+     * Table of strings of reader.
+     */
+    private final SXFStringTable sxfStringTable;
 
     /**
      * Metric text class. This object contains text and them aligment in metric type.
@@ -232,7 +272,7 @@ public class SXFRecord {
      * Record semantic class.
      * Contains two main parameters:
      * 1. code - code of semantic.
-     * 2. value - value of semantic.
+     * 2. value - value of semantic, see {@link #getString()}, {@link #getDouble()} and {@link #getLong()}.
      * Other parameters is service, and maybe hidden in feature.
      */
     public final class Semantic {
@@ -249,9 +289,102 @@ public class SXFRecord {
          */
         public int scale;
         /**
-         * Decrypted value of semantic.
+         * Value of numeric semantic as read, without scale.
+         */
+        private double number;
+        /**
+         * Bytes of string semantic, null for numeric.
+         */
+        private byte[] bytes;
+        /**
+         * Charset of string semantic, null for dynamic length string.
+         */
+        private Charset charset;
+        /**
+         * Decoded string, created on demand.
+         */
+        private String string;
+
+        /**
+         * Semantic is number: CHAR, SHORT, LONG or DOUBLE.
+         * @return true if value is number.
+         */
+        public boolean isNumber() {
+            return bytes == null && (type == SemanticType.CHAR || type == SemanticType.SHORT ||
+                    type == SemanticType.LONG || type == SemanticType.DOUBLE);
+        }
+
+        /**
+         * Get value as number. Number multiplied by 10^scale, string parsed.
+         * @return value or NaN if value is not number.
+         */
+        public double getDouble() {
+            if (isNumber()) {
+                return number * POW10[scale + 127];
+            }
+            String value = getString();
+            if (value == null) {
+                return Double.NaN;
+            }
+            try {
+                return Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        /**
+         * Get value as integer number, fraction of value dropped.
+         * @return value or 0 if value is not number.
+         */
+        public long getLong() {
+            if (isNumber() && scale == 0) {
+                return (long) number;
+            }
+            return (long) getDouble();
+        }
+
+        /**
+         * Get value as string. Numbers formatted by {@link String#valueOf(double)}.
+         * @return value or null for semantics of unsupported types.
+         */
+        public String getString() {
+            String string = this.string;
+            if (string != null) {
+                return string;
+            }
+            if (isNumber()) {
+                string = String.valueOf(getDouble());
+            } else if (bytes == null) {
+                return null;
+            } else if (charset == null) {
+                string = sxfStringTable.decode(bytes, 0, bytes.length, Charset.defaultCharset(), true);
+            } else {
+                int zeroPos = bytes.length;
+                for (int i = 0; i < bytes.length; i++) {
+                    if (bytes[i] == 0x00) {
+                        zeroPos = i;
+                        break;
+                    }
+                }
+                string = sxfStringTable.decode(bytes, 0, zeroPos, charset, true);
+                if (type == SemanticType.STRUNI) {
+                    string = string.replaceAll("\\p{Cc}", "");
+                }
+            }
+            this.string = string;
+            return string;
+        }
+
+        /**
+         * Get value as string. Public field value removed, value decoded on demand.
+         * @return value, see {@link #getString()}.
+         * @deprecated use {@link #getString()}, or {@link #getDouble()} for numbers.
          */
-        public String value;
+        @Deprecated
+        public String getValue() {
+            return getString();
+        }
 
         @Override
         public String toString() {
@@ -259,7 +392,64 @@ public class SXFRecord {
                     String.format("\t\tCode:\t%d\n", code) +
                     String.format("\t\tType:\t%s (%s)\n", type, type.getName()) +
                     String.format("\t\tScale:\t%d\n", scale) +
-                    String.format("\t\tValue:\t%s\n", value);
+                    String.format("\t\tValue:\t%s\n", getString());
+        }
+    }
+
+    /**
+     * Graphic description of record: sequence of graphic primitives, which replace view of object from classificator.
+     * Each primitive has number of draw function and parameters of function.
+     */
+    public static final class Graphic {
+        private final boolean scale;
+        private final List<Primitive> primitives;
+
+        private Graphic(boolean scale, List<Primitive> primitives) {
+            this.scale = scale;
+            this.primitives = primitives;
+        }
+
+        /**
+         * Sizes of primitives in map scale or in screen units.
+         * @return true if graphic is scaled with map.
+         */
+        public boolean isScale() {
+            return scale;
+        }
+
+        public List<Primitive> getPrimitives() {
+            return primitives;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Graphic: scale %b, %s", scale, primitives);
+        }
+    }
+
+    /**
+     * Graphic primitive: number of draw function and raw parameters of function.
+     */
+    public static final class Primitive {
+        private final int number;
+        private final byte[] parameters;
+
+        private Primitive(int number, byte[] parameters) {
+            this.number = number;
+            this.parameters = parameters;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public byte[] getParameters() {
+            return parameters.clone();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{%d, %d bytes}", number, parameters.length);
         }
     }
 
@@ -269,8 +459,19 @@ public class SXFRecord {
      * @param geometryFactory create geometry factory.
      */
     public SXFRecord(SXFPassport sxfPassport, GeometryFactory geometryFactory) {
+        this(sxfPassport, geometryFactory, SXFStringTable.NONE);
+    }
+
+    /**
+     * Constructor of record of reader.
+     * @param sxfPassport passport of SXF file from which read record.
+     * @param geometryFactory create geometry factory.
+     * @param sxfStringTable table of strings of reader, repeated texts and semantics are same strings.
+     */
+    SXFRecord(SXFPassport sxfPassport, GeometryFactory geometryFactory, SXFStringTable sxfStringTable) {
         this.sxfPassport = sxfPassport;
         this.geometryFactory = geometryFactory;
+        this.sxfStringTable = sxfStringTable;
     }
 
     /**
@@ -289,6 +490,30 @@ public class SXFRecord {
         return number;
     }
 
+    /**
+     * Record offset in buffer (position of {@link #IDENTIFIER}).
+     * @return offset of record.
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Total length of record with header.
+     * @return length of record.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Raw info flags and generalization of record header, see {@link SXFRecordIndex}.
+     * @return flags of record header.
+     */
+    int getFlags() {
+        return flags;
+    }
+
     /**
      * Record localization.
      * @return local
@@ -297,6 +522,22 @@ public class SXFRecord {
         return local;
     }
 
+    /**
+     * Bottom limit of visibility (generalization).
+     * @return bottom limit, 0...15.
+     */
+    public int getBottom() {
+        return bottom;
+    }
+
+    /**
+     * Upper limit of visibility (generalization).
+     * @return upper limit, 0...15.
+     */
+    public int getUpper() {
+        return upper;
+    }
+
     /**
      * Number of subrecords.
      * @return number of subrecords in record
@@ -321,6 +562,22 @@ public class SXFRecord {
         return isText;
     }
 
+    /**
+     * Contains graphic description or not. Only for {@link SXFPassport#VERSION_4}.
+     * @return true if record contains graphic description, otherwise false.
+     */
+    public boolean isGraphicExists() {
+        return isGraphic;
+    }
+
+    /**
+     * Graphic description is scaled with map or not.
+     * @return true if graphic is scaled.
+     */
+    public boolean isGraphicScale() {
+        return isGraphicScale;
+    }
+
     public FrameOut getFrameOut() {
         return frameOut;
     }
@@ -360,10 +617,11 @@ public class SXFRecord {
      * Function read only record header information. Geometry, Text, and Semantics read by request.
      * @param buffer Opened buffer SXF file.
      * @param strict Show message through println or IOException.
+     * @return true if record header was read, false if buffer ends before record.
      * @throws IOException exception if wrong.
      */
-    public void read(ByteBuffer buffer, boolean strict) throws IOException {
-        read(buffer, strict, false);
+    public boolean read(ByteBuffer buffer, boolean strict) throws IOException {
+        return read(buffer, strict, false);
     }
 
     /**
@@ -371,38 +629,80 @@ public class SXFRecord {
      * @param buffer Opened buffer SXF file.
      * @param strict Show message through println or IOException.
      * @param findNext find next record if {@link #IDENTIFIER} is wrong
+     * @return true if record header was read, false if buffer ends before record.
      * @throws IOException exception if wrong.
      */
-    public void read(ByteBuffer buffer, boolean strict, boolean findNext) throws IOException {
-        if (buffer.remaining() < 32) {
-            return;
+    public boolean read(ByteBuffer buffer, boolean strict, boolean findNext) throws IOException {
+        long next = read(SXFBuffer.wrap(buffer), buffer.position(), strict, findNext);
+        if (next < 0) {
+            buffer.position(buffer.limit());
+            return false;
         }
-        this.offset = buffer.position();
-        this.buffer = buffer;
+        buffer.position((int) Math.min(next, buffer.limit()));
+        return true;
+    }
 
-        identifier = buffer.getInt();
-        if (!findNext) {
-            checkIdentifier(strict);
-        } else {
-            while (identifier != IDENTIFIER && buffer.remaining() > 4) {
-                identifier = buffer.getInt();
-            }
-            if (identifier != IDENTIFIER) {
-                return;
+    /**
+     * Function read only record header information from position. Geometry, Text, and Semantics read by request.
+     * @param buffer Opened buffer SXF file.
+     * @param position position of record in buffer.
+     * @param strict Show message through println or IOException.
+     * @param findNext find next record if {@link #IDENTIFIER} is wrong
+     * @return position after record, or -1 if buffer ends before record.
+     * @throws IOException exception if wrong.
+     */
+    long read(SXFBuffer buffer, long position, boolean strict, boolean findNext) throws IOException {
+        if (buffer.limit() - position < 32) {
+            return -1;
+        }
+        long offset = position;
+
+        if (findNext) {
+            // Next plausible record header at any offset
+            offset = SXFResync.find(buffer, position, buffer.limit());
+            if (offset < 0) {
+                return -1;
             }
         }
         // Record header length is 32
-        if (buffer.remaining() < 32) {
-            return;
+        if (buffer.limit() - offset - 4 < 32) {
+            return -1;
         }
+        read(buffer, offset, strict);
+        if (length < 32) {
+            // Position can't be moved to next record
+            String message = "Wrong length of record " + length + " at offset " + offset + ", read stopped";
+            if (strict) {
+                throw new IOException(message);
+            }
+            System.err.println(message);
+            return -1;
+        }
+        // End of record, skip metric,text,semantics and etc.
+        return offset + length;
+    }
+
+    /**
+     * Function read only record header information from absolute offset. Buffer has no position,
+     * so records of one buffer can be read and decoded from many threads.
+     * @param buffer Opened buffer SXF file.
+     * @param offset offset of record in buffer.
+     * @param strict Show message through println or IOException.
+     * @throws IOException exception if wrong.
+     */
+    void read(SXFBuffer buffer, long offset, boolean strict) throws IOException {
+        this.offset = offset;
+        this.buffer = buffer;
+        semanticTable = null;
+
+        identifier = buffer.getInt(offset);
+        checkIdentifier(strict);
 
         if (sxfPassport.getVersion() == SXFPassport.VERSION_3) {
             read3(buffer, strict);
         } else if (sxfPassport.getVersion() == SXFPassport.VERSION_4) {
             read4(buffer, strict);
         }
-        // End of record, skip metric,text,semantics and etc.
-        buffer.position(buffer.position() + length - 32);
     }
 
     /**
@@ -411,14 +711,14 @@ public class SXFRecord {
      * @param strict Show message through println or IOException.
      * @throws IOException exception if wrong.
      */
-    private void read3(ByteBuffer buffer, boolean strict) throws IOException {
-        length = buffer.getInt();
-        metricLength = buffer.getInt();
-        excode = buffer.getInt();
-        number = buffer.getInt();
+    private void read3(SXFBuffer buffer, boolean strict) throws IOException {
+        length = buffer.getInt(offset + 4);
+        metricLength = buffer.getInt(offset + 8);
+        excode = buffer.getInt(offset + 12);
+        number = buffer.getInt(offset + 16);
 
-        byte[] infoFlags = new byte[3];
-        buffer.get(infoFlags);
+        flags = buffer.getInt(offset + 20);
+        byte[] infoFlags = {buffer.get(offset + 20), buffer.get(offset + 21), buffer.get(offset + 22)};
         local = Local.fromValue(infoFlags[0] & 0xF);
         frameOut = FrameOut.fromValue((infoFlags[0] >> 4) & 0xF);
 
@@ -433,17 +733,17 @@ public class SXFRecord {
         isText = ((infoFlags[2] >> 3) & 0x1) == 1;
         this.metricElementSize = getMetricElementSizeEnum(metricElementSize, isFloat);
 
-        byte generalization = buffer.get();
+        byte generalization = buffer.get(offset + 23);
         bottom = generalization & 0xF;
         upper = (generalization >> 4) & 0xF;
 
-        groupNumber = buffer.getInt();
+        groupNumber = buffer.getInt(offset + 24);
 
-        metricDescription = buffer.getInt();
+        metricDescription = buffer.getInt(offset + 28);
         subrecordCount = metricDescription & 0xFFFF;
         pointCount = (metricDescription >> 16) & 0xFFFF;
 
-        metricOffset = buffer.position();
+        metricOffset = offset + 32;
         semanticOffset = metricOffset + metricLength;
     }
 
@@ -453,14 +753,14 @@ public class SXFRecord {
      * @param strict Show message through println or IOException.
      * @throws IOException exception if wrong.
      */
-    private void read4(ByteBuffer buffer, boolean strict) throws IOException {
-        length = buffer.getInt();
-        metricLength = buffer.getInt();
-        excode = buffer.getInt();
-        number = buffer.getInt();
+    private void read4(SXFBuffer buffer, boolean strict) throws IOException {
+        length = buffer.getInt(offset + 4);
+        metricLength = buffer.getInt(offset + 8);
+        excode = buffer.getInt(offset + 12);
+        number = buffer.getInt(offset + 16);
 
-        byte[] infoFlags = new byte[3];
-        buffer.get(infoFlags);
+        flags = buffer.getInt(offset + 20);
+        byte[] infoFlags = {buffer.get(offset + 20), buffer.get(offset + 21), buffer.get(offset + 22)};
 
         local = Local.fromValue(infoFlags[0] & 0xF);
         isMultiPolygon = ((infoFlags[0] >> 4) & 0x1) == 1;
@@ -483,18 +783,19 @@ public class SXFRecord {
         spline = Spline.fromValue((infoFlags[2] >> 6) & 0x3);
         this.metricElementSize = getMetricElementSizeEnum(metricElementSize, isFloat);
 
-        byte generalization = buffer.get();
+        byte generalization = buffer.get(offset + 23);
         bottom = generalization & 0xF;
         upper = (generalization >> 4) & 0xF;
 
-        bigRecordPointCount = buffer.getInt();
+        bigRecordPointCount = buffer.getInt(offset + 24);
 
-        metricDescription = buffer.getInt();
+        metricDescription = buffer.getInt(offset + 28);
         subrecordCount = metricDescription & 0xFFFF;
         pointCount = (metricDescription >> 16) & 0xFFFF;
 
-        metricOffset = buffer.position();
+        metricOffset = offset + 32;
         semanticOffset = metricOffset + metricLength;
+        graphic = null;
     }
 
     /**
@@ -543,41 +844,39 @@ public class SXFRecord {
         if (geometry != null) {
             return geometry;
         }
-        // Set offset to metric
-        buffer.position(metricOffset);
-
-        if (buffer.remaining() < (length - 32)) {
+        if (buffer.limit() - metricOffset < (length - 32)) {
             throw new IOException("Buffer remaining bytes less then record size!");
         }
+        // Current offset in metric
+        long position = metricOffset;
+        int coordinateSize = getCoordinateSize();
+        // Geometry over mapped metric, without copy of coordinates
+        boolean mapped = geometryFactory.getCoordinateSequenceFactory() instanceof SXFCoordinateSequenceFactory;
 
         // Read main record metric
-        int pointCount = (this.pointCount == 65537 ? bigRecordPointCount : this.pointCount);
-        double[][] srcRecordCoordinates = new double[pointCount][];
-        for (int i = 0; i < pointCount; i++) {
-            srcRecordCoordinates[i] = readCoordinate();
-        }
+        int pointCount = getMetricPointCount();
+        CoordinateSequence srcRecordCoordinates = readCoordinateSequence(position, pointCount, mapped);
+        position += (long) pointCount * coordinateSize;
 
-        // After main metric may be text metric
+        // After main metric may be text metric, texts read by texts()
         if (isText) {
-            texts.add(readText());
+            position += getTextSize(position);
         }
 
         // Process subrecords
-        double[][][] srcSubrecordsCoordinates = new double[subrecordCount][][];
+        CoordinateSequence[] srcSubrecordsCoordinates = new CoordinateSequence[subrecordCount];
         for (int i = 0; i < subrecordCount; i++) {
             // First two bytes is reserver, skip them
-            buffer.position(buffer.position() + 2);
-            pointCount = buffer.getShort();
-            double[][] srcSubrecordCoordinates = new double[pointCount][];
-            for (int k = 0; k < pointCount; k++) {
-                srcSubrecordCoordinates[k] = readCoordinate();
-            }
-            srcSubrecordsCoordinates[i] = srcSubrecordCoordinates;
+            pointCount = buffer.getShort(position + 2) & 0xFFFF;
+            position += 4;
+            srcSubrecordsCoordinates[i] = readCoordinateSequence(position, pointCount, mapped);
+            position += (long) pointCount * coordinateSize;
             if (isText) {
-                texts.add(readText());
+                position += getTextSize(position);
             }
         }
 
+        Geometry geometry = null;
         switch (local) {
             case MIXED:
             case TITLE:
@@ -594,86 +893,435 @@ public class SXFRecord {
             default:
                 break;
         }
+        this.geometry = geometry;
 
         return geometry;
     }
 
     /**
-     * Get texts of record. Worked only if geometry will be read earlier.
+     * Identifier of read record header, {@link #IDENTIFIER} if header is right.
+     * @return identifier.
+     */
+    int getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Envelope of record geometry, computed from metric without build of geometry.
+     * @param envelope destination, four values: minX, minY, maxX, maxY (axes of geometry).
+     *                 NaN if record has no points.
+     * @param offset offset in destination.
+     */
+    void envelope(double[] envelope, int offset) {
+        // Bounds of raw metric values: first and second ordinate of packed coordinates
+        double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        if (identifier == IDENTIFIER && local != null) {
+            long position = metricOffset;
+            int coordinateSize = getCoordinateSize();
+            // Point objects use only first point of each metric
+            boolean point = local == Local.POINT;
+            int pointCount = getMetricPointCount();
+            for (int i = 0; i <= subrecordCount; i++) {
+                if (i > 0) {
+                    pointCount = buffer.getShort(position + 2) & 0xFFFF;
+                    position += 4;
+                }
+                metricBounds(position, point ? Math.min(pointCount, 1) : pointCount, bounds);
+                position += (long) Math.max(pointCount, 0) * coordinateSize;
+                if (isText) {
+                    position += getTextSize(position);
+                }
+            }
+        }
+        double minX = bounds[0];
+        double minY = bounds[1];
+        double maxX = bounds[2];
+        double maxY = bounds[3];
+        if (minX > maxX) {
+            minX = minY = maxX = maxY = Double.NaN;
+        } else {
+            // Same correction and transform as for each point, they not change order of values
+            if (minX == 8000000.0) {
+                minX += 0.000001;
+            }
+            if (maxX == 8000000.0) {
+                maxX += 0.000001;
+            }
+            if (sxfPassport.isDescrets()) {
+                double x1 = sxfPassport.descretsToMetresY(minX);
+                double x2 = sxfPassport.descretsToMetresY(maxX);
+                double y1 = sxfPassport.descretsToMetresX(minY);
+                double y2 = sxfPassport.descretsToMetresX(maxY);
+                minX = Math.min(x1, x2);
+                maxX = Math.max(x1, x2);
+                minY = Math.min(y1, y2);
+                maxY = Math.max(y1, y2);
+            }
+        }
+        envelope[offset] = minX;
+        envelope[offset + 1] = minY;
+        envelope[offset + 2] = maxX;
+        envelope[offset + 3] = maxY;
+    }
+
+    /**
+     * Extend bounds by raw values of metric points, without decode of points.
+     * @param offset offset of first coordinate in buffer.
+     * @param count count of points.
+     * @param bounds min and max of first and second ordinate of packed coordinates (see
+     *               {@link #readCoordinates(long, int)}): minA, minB, maxA, maxB.
+     */
+    private void metricBounds(long offset, int count, double[] bounds) {
+        if (count <= 0) {
+            return;
+        }
+        int coordinateSize = getCoordinateSize();
+        long end = offset + (long) count * coordinateSize;
+        switch (metricElementSize) {
+            case SHORT:
+            case INT: {
+                boolean isShort = metricElementSize == MetricElementSize.SHORT;
+                int half = isShort ? 2 : 4;
+                int minA = Integer.MAX_VALUE;
+                int minB = Integer.MAX_VALUE;
+                int maxA = Integer.MIN_VALUE;
+                int maxB = Integer.MIN_VALUE;
+                for (; offset < end; offset += coordinateSize) {
+                    int a = isShort ? buffer.getShort(offset + half) : buffer.getInt(offset + half);
+                    int b = isShort ? buffer.getShort(offset) : buffer.getInt(offset);
+                    minA = Math.min(minA, a);
+                    maxA = Math.max(maxA, a);
+                    minB = Math.min(minB, b);
+                    maxB = Math.max(maxB, b);
+                }
+                extend(bounds, minA, minB, maxA, maxB);
+                break;
+            }
+            case FLOAT:
+            case DOUBLE: {
+                boolean isFloat = metricElementSize == MetricElementSize.FLOAT;
+                int half = isFloat ? 4 : 8;
+                double minA = Double.POSITIVE_INFINITY;
+                double minB = Double.POSITIVE_INFINITY;
+                double maxA = Double.NEGATIVE_INFINITY;
+                double maxB = Double.NEGATIVE_INFINITY;
+                for (; offset < end; offset += coordinateSize) {
+                    double a = isFloat ? buffer.getFloat(offset + half) : buffer.getDouble(offset + half);
+                    double b = isFloat ? buffer.getFloat(offset) : buffer.getDouble(offset);
+                    minA = Math.min(minA, a);
+                    maxA = Math.max(maxA, a);
+                    minB = Math.min(minB, b);
+                    maxB = Math.max(maxB, b);
+                }
+                extend(bounds, minA, minB, maxA, maxB);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    private static void extend(double[] bounds, double minA, double minB, double maxA, double maxB) {
+        bounds[0] = Math.min(bounds[0], minA);
+        bounds[1] = Math.min(bounds[1], minB);
+        bounds[2] = Math.max(bounds[2], maxA);
+        bounds[3] = Math.max(bounds[3], maxB);
+    }
+
+    /**
+     * Get texts of record. Function read texts if they will be not read earlier, geometry not read:
+     * coordinates of main record and subrecords skipped by count of points.
      * One item in texts implements one geometry from record geometry.
      * @return list of text.
      * @throws IOException exception if wrong.
      */
     public List<Text> texts() throws IOException {
-        if (isText && geometry == null) {
-            geometry();
+        if (!isText || identifier != IDENTIFIER || isTextRead) {
+            return texts;
+        }
+        if (buffer.limit() - metricOffset < (length - 32)) {
+            throw new IOException("Buffer remaining bytes less then record size!");
         }
+        List<Text> texts = new ArrayList<>(subrecordCount + 1);
+        int coordinateSize = getCoordinateSize();
+        int pointCount = getMetricPointCount();
+        long position = metricOffset + (long) pointCount * coordinateSize;
+        texts.add(readText(position));
+        position += getTextSize(position);
+        for (int i = 0; i < subrecordCount; i++) {
+            // First two bytes is reserver, skip them
+            pointCount = buffer.getShort(position + 2) & 0xFFFF;
+            position += 4 + (long) pointCount * coordinateSize;
+            texts.add(readText(position));
+            position += getTextSize(position);
+        }
+        this.texts = texts;
+        isTextRead = true;
         return texts;
     }
 
     /**
-     * Read coordinate from record. Returns array which contains xyz.
-     * @return array with xyz
+     * Count of points of main record. Big records (more than 65534 points) have 65535 in metric description
+     * and count of points in header field {@link #bigRecordPointCount}.
+     * @return count of points.
      */
-    private double[] readCoordinate() {
-        double x = 0.;
-        double y = 0.;
-        double z = 0.;
+    private int getMetricPointCount() {
+        return pointCount == 65535 && bigRecordPointCount > 0 ? bigRecordPointCount : pointCount;
+    }
 
-        if (!isFloat) {
-            if (metricElementSize == MetricElementSize.SHORT) {
-                x = buffer.getShort();
-                y = buffer.getShort();
-            } else if (metricElementSize == MetricElementSize.INT) {
-                x = buffer.getInt();
-                y = buffer.getInt();
+    /**
+     * Visit coordinates of record by chunks of 4096 points.
+     * @param visitor visitor of coordinates.
+     * @throws IOException exception if wrong.
+     * @see #visitCoordinates(SXFCoordinateVisitor, int)
+     */
+    public void visitCoordinates(SXFCoordinateVisitor visitor) throws IOException {
+        visitCoordinates(visitor, 4096);
+    }
+
+    /**
+     * Visit coordinates of main record and subrecords without build of geometry. Points decoded into one
+     * array of chunkSize points, which reused for all chunks, so memory not depends on size of record.
+     * Points are same as points of {@link #geometry()}, but all points of metric are visited: geometry
+     * of point objects use only first point of each part, rings and lines of one point are completed by geometry.
+     * @param visitor visitor of coordinates.
+     * @param chunkSize max count of points in chunk.
+     * @throws IOException exception if wrong.
+     */
+    public void visitCoordinates(SXFCoordinateVisitor visitor, int chunkSize) throws IOException {
+        if (identifier != IDENTIFIER) {
+            return;
+        }
+        if (buffer.limit() - metricOffset < (length - 32)) {
+            throw new IOException("Buffer remaining bytes less then record size!");
+        }
+        int coordinateSize = getCoordinateSize();
+        double[] chunk = new double[chunkSize * 3];
+        long position = metricOffset;
+        int pointCount = getMetricPointCount();
+        for (int part = 0; part <= subrecordCount; part++) {
+            if (part > 0) {
+                // First two bytes is reserver, skip them
+                pointCount = buffer.getShort(position + 2) & 0xFFFF;
+                position += 4;
+            }
+            visitor.part(part, pointCount);
+            for (int done = 0; done < pointCount; done += chunkSize) {
+                int count = Math.min(chunkSize, pointCount - done);
+                readCoordinates(position + (long) done * coordinateSize, count, chunk);
+                visitor.coordinates(chunk, count);
+            }
+            position += (long) pointCount * coordinateSize;
+            if (isText) {
+                position += getTextSize(position);
             }
+        }
+    }
 
-            if (is3D) {
-                z = buffer.getFloat();
+    /**
+     * Counts of points and closure of main record and subrecords, without decode of all points.
+     * @param closed closure of parts: first and last points are equal, as in geometry.
+     * @return counts of points of parts or null if record is wrong.
+     */
+    int[] parts(boolean[] closed) {
+        if (identifier != IDENTIFIER || buffer.limit() - metricOffset < (length - 32)) {
+            return null;
+        }
+        int[] counts = new int[subrecordCount + 1];
+        int coordinateSize = getCoordinateSize();
+        double[] first = new double[3];
+        double[] last = new double[3];
+        long position = metricOffset;
+        int pointCount = getMetricPointCount();
+        for (int part = 0; part <= subrecordCount; part++) {
+            if (part > 0) {
+                pointCount = buffer.getShort(position + 2) & 0xFFFF;
+                position += 4;
             }
-        } else {
-            if (metricElementSize == MetricElementSize.FLOAT) {
-                x = buffer.getFloat();
-                y = buffer.getFloat();
+            counts[part] = pointCount;
+            if (pointCount > 0) {
+                readCoordinates(position, 1, first);
+                readCoordinates(position + (long) (pointCount - 1) * coordinateSize, 1, last);
+                closed[part] = first[0] == last[0] && first[1] == last[1] && first[2] == last[2];
+            }
+            position += (long) pointCount * coordinateSize;
+            if (isText) {
+                position += getTextSize(position);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * SRID of geometries of record.
+     * @return srid of geometry factory.
+     */
+    int getSrid() {
+        return geometryFactory.getSRID();
+    }
 
+    /**
+     * Size of one coordinate in metric, in bytes.
+     * @return size of coordinate.
+     */
+    private int getCoordinateSize() {
+        int size = 0;
+        switch (metricElementSize) {
+            case SHORT: size = 2 * 2; break;
+            case FLOAT:
+            case INT: size = 4 * 2; break;
+            case DOUBLE: size = 8 * 2; break;
+            default: break;
+        }
+        if (is3D) {
+            size += (metricElementSize == MetricElementSize.DOUBLE ? 8 : 4);
+        }
+        return size;
+    }
+
+    /**
+     * Read coordinates of metric part. If mapped, sequence reads coordinates from buffer by request,
+     * otherwise coordinates decoded into packed array.
+     * @param offset offset of first coordinate in buffer.
+     * @param count count of points.
+     * @param mapped create sequence over buffer.
+     * @return coordinates of metric part.
+     */
+    private CoordinateSequence readCoordinateSequence(long offset, int count, boolean mapped) {
+        if (mapped) {
+            return new SXFCoordinateSequence(buffer, offset, Math.max(count, 0), count, metricElementSize, is3D,
+                    getCoordinateSize(), sxfPassport.isDescrets() ? sxfPassport : null);
+        }
+        return new PackedCoordinateSequence.Double(readCoordinates(offset, count), 3);
+    }
+
+    /**
+     * Read coordinates from record into packed array, each point is three ordinates {y, x, z}.
+     * Each combination of element size and dimension has own loop, no allocations per point.
+     * @param offset offset of first coordinate in buffer.
+     * @param count count of points.
+     * @return packed coordinates in metres.
+     */
+    private double[] readCoordinates(long offset, int count) {
+        double[] coordinates = new double[Math.max(count, 0) * 3];
+        readCoordinates(offset, count, coordinates);
+        return coordinates;
+    }
+
+    /**
+     * Read coordinates from record into begin of packed array, see {@link #readCoordinates(long, int)}.
+     * @param offset offset of first coordinate in buffer.
+     * @param count count of points.
+     * @param coordinates array for at least count points.
+     */
+    private void readCoordinates(long offset, int count, double[] coordinates) {
+        int end = Math.max(count, 0) * 3;
+        if (end == 0) {
+            return;
+        }
+        // Metric usually inside one segment of buffer: read segment by int index, without
+        // search of segment for each value. Metric across segments copied.
+        ByteBuffer segment = buffer.segment(offset);
+        int index = buffer.index(offset);
+        long size = (long) Math.max(count, 0) * getCoordinateSize();
+        if (index + size > segment.limit()) {
+            byte[] bytes = new byte[(int) size];
+            getBytes(offset, bytes);
+            segment = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            index = 0;
+        }
+        switch (metricElementSize) {
+            case SHORT:
                 if (is3D) {
-                    z = buffer.getFloat();
+                    for (int i = 0; i < end; i += 3, index += 8) {
+                        coordinates[i] = segment.getShort(index + 2);
+                        coordinates[i + 1] = segment.getShort(index);
+                        coordinates[i + 2] = segment.getFloat(index + 4);
+                    }
+                } else {
+                    for (int i = 0; i < end; i += 3, index += 4) {
+                        coordinates[i] = segment.getShort(index + 2);
+                        coordinates[i + 1] = segment.getShort(index);
+                    }
                 }
-            } else if (metricElementSize == MetricElementSize.DOUBLE) {
-                x = buffer.getDouble();
-                y = buffer.getDouble();
-
+                break;
+            case INT:
+                if (is3D) {
+                    for (int i = 0; i < end; i += 3, index += 12) {
+                        coordinates[i] = segment.getInt(index + 4);
+                        coordinates[i + 1] = segment.getInt(index);
+                        coordinates[i + 2] = segment.getFloat(index + 8);
+                    }
+                } else {
+                    for (int i = 0; i < end; i += 3, index += 8) {
+                        coordinates[i] = segment.getInt(index + 4);
+                        coordinates[i + 1] = segment.getInt(index);
+                    }
+                }
+                break;
+            case FLOAT:
                 if (is3D) {
-                    z = buffer.getDouble();
+                    for (int i = 0; i < end; i += 3, index += 12) {
+                        coordinates[i] = segment.getFloat(index + 4);
+                        coordinates[i + 1] = segment.getFloat(index);
+                        coordinates[i + 2] = segment.getFloat(index + 8);
+                    }
+                } else {
+                    for (int i = 0; i < end; i += 3, index += 8) {
+                        coordinates[i] = segment.getFloat(index + 4);
+                        coordinates[i + 1] = segment.getFloat(index);
+                    }
                 }
-            }
+                break;
+            case DOUBLE:
+                if (is3D) {
+                    for (int i = 0; i < end; i += 3, index += 24) {
+                        coordinates[i] = segment.getDouble(index + 8);
+                        coordinates[i + 1] = segment.getDouble(index);
+                        coordinates[i + 2] = segment.getDouble(index + 16);
+                    }
+                } else {
+                    for (int i = 0; i < end; i += 3, index += 16) {
+                        coordinates[i] = segment.getDouble(index + 8);
+                        coordinates[i + 1] = segment.getDouble(index);
+                    }
+                }
+                break;
+            default:
+                break;
         }
-
-        if (y == 8000000.0) {
-            y += 0.000001;
+        for (int i = 0; i < end; i += 3) {
+            if (coordinates[i] == 8000000.0) {
+                coordinates[i] += 0.000001;
+            }
         }
-
         if (sxfPassport.isDescrets()) {
-            double[][] xy = sxfPassport.getXY();
-            double[][] deviceXY = sxfPassport.getDeviceXY();
-            x = xy[0][0] + (x - deviceXY[0][0]) / sxfPassport.getDeviceCapability() * sxfPassport.getScale() + sxfPassport.getDXY0()[0];
-            y = xy[0][1] + (y - deviceXY[0][1]) / sxfPassport.getDeviceCapability() * sxfPassport.getScale() + sxfPassport.getDXY0()[1];
+            sxfPassport.descretsToMetres(coordinates, 0, end);
         }
-        return new double[] {y, x, z};
+    }
+
+    /**
+     * Size of record text in metric, in bytes: length byte, string and final zero.
+     * @param offset offset of text in buffer.
+     * @return size of text.
+     */
+    private int getTextSize(long offset) {
+        return (buffer.get(offset) & 0xFF) + 2;
     }
 
     /**
      * Read record text from file
+     * @param offset offset of text in buffer.
      * @return Text object
      * @throws IOException exception if wrong.
      */
-    private Text readText() throws IOException {
-        int length = buffer.get() & 0xFF;
+    private Text readText(long offset) throws IOException {
+        int length = buffer.get(offset) & 0xFF;
         byte[] string = new byte[length];
-        buffer.get(string);
+        getBytes(offset + 1, string);
         // Final 0x00 by documentation
-        byte zero   = buffer.get();
+        byte zero   = buffer.get(offset + 1 + length);
         int strlen = 0;
         for (byte b : string) {
             if (b == 0x00) {
@@ -685,7 +1333,7 @@ public class SXFRecord {
 //        if (!isUnicode) {
 //            textEncoding = TextEncoding.CP1251.getName();
 //        }
-        String text = new String(string, sxfPassport.getTextEncoding().getName()).substring(0, strlen).intern();
+        String text = sxfStringTable.decode(string, 0, strlen, charset(sxfPassport.getTextEncoding()), false);
         TextMetricAlign align = TextMetricAlign.BASELINE_LEFT;
         if (strlen + 1 < length) {
             byte c = string[strlen + 1];
@@ -700,181 +1348,364 @@ public class SXFRecord {
         return new Text(text, align);
     }
 
+    private static Charset charset(TextEncoding textEncoding) {
+        switch (textEncoding) {
+            case IBM866:
+                return IBM866;
+            case KOI8R:
+                return KOI8R;
+            default:
+                return CP1251;
+        }
+    }
+
+    /**
+     * Get graphic description of record. Graphic read by request and only once, records without
+     * graphic not read anything.
+     * Graphic description is last part of metric, after coordinates and texts: identifier {@link #GRAPHIC_IDENTIFIER},
+     * length of description (4 bytes, with header), count of primitives (4 bytes), then primitives:
+     * length of primitive (2 bytes, with head), number of function (2 bytes) and parameters.
+     * @return graphic or null if record has not graphic.
+     * @throws IOException exception if description is wrong.
+     */
+    public Graphic graphic() throws IOException {
+        if (!isGraphic || identifier != IDENTIFIER) {
+            return null;
+        }
+        Graphic graphic = this.graphic;
+        if (graphic != null) {
+            return graphic;
+        }
+        long end = metricOffset + metricLength;
+        long position = getGraphicOffset();
+        if (end - position < 12 || buffer.getInt(position) != GRAPHIC_IDENTIFIER) {
+            throw new IOException("Graphic description not found in metric of record at offset " + offset);
+        }
+        int graphicLength = buffer.getInt(position + 4);
+        int count = buffer.getInt(position + 8);
+        if (graphicLength < 12 || graphicLength > end - position || count < 0) {
+            throw new IOException("Wrong length of graphic description " + graphicLength + " of record at offset " + offset);
+        }
+        end = position + graphicLength;
+        position += 12;
+        List<Primitive> primitives = new ArrayList<>(Math.min(count, graphicLength / 4));
+        for (int i = 0; i < count; i++) {
+            int length = end - position >= 4 ? buffer.getShort(position) & 0xFFFF : -1;
+            if (length < 4 || position + length > end) {
+                throw new IOException("Wrong graphic primitive " + i + " of record at offset " + offset);
+            }
+            int number = buffer.getShort(position + 2) & 0xFFFF;
+            byte[] parameters = new byte[length - 4];
+            getBytes(position + 4, parameters);
+            primitives.add(new Primitive(number, parameters));
+            position += length;
+        }
+        graphic = new Graphic(isGraphicScale, primitives);
+        this.graphic = graphic;
+        return graphic;
+    }
+
+    /**
+     * Offset of graphic description: end of coordinates and texts of main record and subrecords.
+     * @return offset in buffer.
+     */
+    private long getGraphicOffset() {
+        int coordinateSize = getCoordinateSize();
+        long position = metricOffset + (long) getMetricPointCount() * coordinateSize;
+        if (isText) {
+            position += getTextSize(position);
+        }
+        for (int i = 0; i < subrecordCount; i++) {
+            // First two bytes is reserver, skip them
+            int pointCount = buffer.getShort(position + 2) & 0xFFFF;
+            position += 4 + (long) pointCount * coordinateSize;
+            if (isText) {
+                position += getTextSize(position);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Length of semantics block: rest of record after metric.
+     * @return length in bytes.
+     */
+    private int getSemanticLength() {
+        return (int) (offset + length - semanticOffset);
+    }
+
     /**
      * Get list of semantics. Function read semantics if they will be not read earlier.
      * @return list of semantics.
      */
     public List<Semantic> semantics() {
+        List<Semantic> semantics = this.semantics;
         if (identifier != IDENTIFIER) {
             return semantics;
         }
         if (isSemantic && semantics.size() > 0) {
             return semantics;
         }
+        semantics = new ArrayList<>();
         // Read semantics
-        int totalBytes = length - metricLength - 32;
-
-        buffer.position(semanticOffset);
+        int totalBytes = getSemanticLength();
+        // Current offset in semantics
+        long position = semanticOffset;
 
         while (totalBytes > 0) {
-            Semantic semantic = new Semantic();
-
-            semantic.code = buffer.getShort() & 0xFFFF;
-            byte[] lengthCode = new byte[2];
-            buffer.get(lengthCode);
-            int type = lengthCode[0] & 0xFF;
-            int scale = lengthCode[1];
+            int size = semanticSize(position);
+            if (size < 0) {
+                break;
+            }
+            semantics.add(readSemantic(position));
+            position += 4 + size;
             // Bytes left to read
-            totalBytes -= 4;
-
-            if (type == 128 && scale == 255) {
-                // This is dynamic length string
-                int length = buffer.getInt();
-                // Bytes left to read
-                totalBytes -= 4;
-                byte[] string = new byte[length];
-                buffer.get(string);
-                // Bytes left to read
-                totalBytes -= length;
-                semantic.type = SemanticType.fromValue(type);
-                semantic.scale = scale;
-                semantic.value = new String(string).trim().intern();
-            } else {
-                semantic.type = SemanticType.fromValue(type);
-                semantic.scale = scale;
-                if (semantic.type == null) {
-                    break;
-                }
+            totalBytes -= 4 + size;
+        }
+        this.semantics = semantics;
 
-                if (semantic.type == SemanticType.CHAR || semantic.type == SemanticType.SHORT ||
-                        semantic.type == SemanticType.DOUBLE || semantic.type == SemanticType.LONG) {
-                    if (semantic.scale < -127 || semantic.scale > 127) {
-                        break;
-                    }
-                } else {
-                    // Texts can't have negative length!
-                    semantic.scale = semantic.scale & 0xFF;
-                }
+        return semantics;
+    }
 
-                switch (semantic.type) {
-                    case STRDOS:
-                    case STRING:
-                    case STRUNI: {
-                        Charset charset;
-                        switch (semantic.type) {
-                            case STRDOS:
-                                charset = Charset.forName(TextEncoding.IBM866.getName());
-                                break;
-                            case STRING:
-                                charset = Charset.forName(TextEncoding.CP1251.getName());
-                                break;
-                            case STRUNI:
-                                charset = Charset.forName(TextEncoding.KOI8R.getName());
-                                break;
-                            default:
-                                charset = Charset.forName(sxfPassport.getTextEncoding().getName());//"UTF-8");
-                        }
-                        byte[] string = new byte[semantic.scale + 1];
-                        buffer.get(string);
-                        int zeroPos = string.length;
-                        for (int i = 0; i < string.length; i++) {
-                            if (string[i] == 0x00) {
-                                zeroPos = i;
-                                break;
-                            }
-                        }
-                        String value = new String(string, charset).substring(0, zeroPos).trim().intern();
-                        if (semantic.type == SemanticType.STRUNI) {
-                            value = value.replaceAll("\\p{Cc}", "");
-                        }
-                        semantic.value = value;
-                        totalBytes -= (semantic.scale + 1);
-                    }
-                    break;
-                    case CHAR: {
-                        byte value = buffer.get();
-                        semantic.value = String.valueOf((int) value * Math.pow(10., semantic.scale)).intern();
-                        totalBytes -= 1;
-                    }
-                    break;
-                    case SHORT: {
-                        short value = buffer.getShort();
-                        semantic.value = String.valueOf(value * Math.pow(10., semantic.scale)).intern();
-                        totalBytes -= 2;
-                    }
-                    break;
-                    case LONG: {
-                        int value = buffer.getInt();
-                        semantic.value = String.valueOf(value * Math.pow(10., semantic.scale)).intern();
-                        totalBytes -= 4;
-                    }
-                    break;
-                    case DOUBLE: {
-                        double value = buffer.getDouble();
-                        semantic.value = String.valueOf(value * Math.pow(10., semantic.scale)).intern();
-                        totalBytes -= 8;
-                    }
+    /**
+     * Get first semantic with code. Only this semantic decoded, offsets of semantics are read
+     * at first call and kept in record.
+     * @param code code of semantic.
+     * @return semantic or null if record has not semantic with code.
+     */
+    public Semantic semantic(int code) {
+        int[] table = semanticTable();
+        for (int i = 0; i < table.length; i += 2) {
+            if (table[i] == code) {
+                return readSemantic(semanticOffset + table[i + 1]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get numeric value of first semantic with code. String values are parsed.
+     * @param code code of semantic.
+     * @return value or NaN if record has not semantic with code or value is not number.
+     */
+    public double semanticDouble(int code) {
+        Semantic semantic = semantic(code);
+        return semantic != null ? semantic.getDouble() : Double.NaN;
+    }
+
+    /**
+     * Table of semantics: code and offset from begin of semantics block for each semantic.
+     * @return table, read at first call.
+     */
+    private int[] semanticTable() {
+        int[] table = semanticTable;
+        if (table != null) {
+            return table;
+        }
+        table = new int[16];
+        int count = 0;
+        if (identifier == IDENTIFIER) {
+            int totalBytes = getSemanticLength();
+            long position = semanticOffset;
+            while (totalBytes > 0) {
+                int size = semanticSize(position);
+                if (size < 0) {
                     break;
-                    default:
-                        break;
                 }
+                if (count == table.length) {
+                    table = Arrays.copyOf(table, count * 2);
+                }
+                table[count++] = buffer.getShort(position) & 0xFFFF;
+                table[count++] = (int) (position - semanticOffset);
+                position += 4 + size;
+                totalBytes -= 4 + size;
             }
-            semantics.add(semantic);
         }
-
-        return semantics;
+        table = Arrays.copyOf(table, count);
+        semanticTable = table;
+        return table;
     }
 
     /**
-     * Create {@link MultiLineString}.
-     * @param coordinates main record coordinates.
-     * @param subCoordinates sub record coordinates.
-     * @return {@link MultiLineString} geometry.
+     * Check semantic with code exists, values of semantics not decoded. Semantics walked same way
+     * as by {@link #semantics()}.
+     * @param code code of semantic.
+     * @return true if record has semantic with code.
      */
-    private Geometry createMultiLineString(double[][] coordinates, double[][][] subCoordinates) {
-        boolean clonePoint;
-        int length = coordinates.length;
-        if (length == 1) {
-            length = 2;
-            clonePoint = true;
-        } else {
-            clonePoint = false;
+    boolean hasSemantic(int code) {
+        if (identifier != IDENTIFIER) {
+            return false;
         }
-        CoordinateSequence coordinateSequence = geometryFactory.getCoordinateSequenceFactory().create(length, 3);
-        for (int i = 0; i < coordinates.length; i++) {
-            for (int n = 0; n < 3; n++) {
-                coordinateSequence.setOrdinate(i, n, coordinates[i][n]);
+        int totalBytes = getSemanticLength();
+        long position = semanticOffset;
+        while (totalBytes > 0) {
+            int size = semanticSize(position);
+            if (size < 0) {
+                return false;
             }
+            if ((buffer.getShort(position) & 0xFFFF) == code) {
+                return true;
+            }
+            position += 4 + size;
+            totalBytes -= 4 + size;
+        }
+        return false;
+    }
+
+    /**
+     * Size of value of semantic.
+     * @param position offset of semantic.
+     * @return size of value after code, type and scale, or -1 if semantic is wrong and semantics must be not read further.
+     */
+    private int semanticSize(long position) {
+        int type = buffer.get(position + 2) & 0xFF;
+        int scale = buffer.get(position + 3);
+        if (type == 128 && scale == 255) {
+            // This is dynamic length string
+            return 4 + buffer.getInt(position + 4);
         }
-        if (clonePoint) {
-            for (int n = 0; n < 3; n++) {
-                coordinateSequence.setOrdinate(1, n, coordinates[0][n]);
+        SemanticType semanticType = SemanticType.fromValue(type);
+        if (semanticType == null) {
+            return -1;
+        }
+        switch (semanticType) {
+            case STRDOS:
+            case STRING:
+            case STRUNI:
+                // Texts can't have negative length!
+                return (scale & 0xFF) + 1;
+            case CHAR:
+            case SHORT:
+            case LONG:
+            case DOUBLE:
+                if (scale < -127 || scale > 127) {
+                    return -1;
+                }
+                return semanticType == SemanticType.CHAR ? 1 : semanticType == SemanticType.SHORT ? 2 :
+                        semanticType == SemanticType.LONG ? 4 : 8;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Read semantic, semantic must be checked by {@link #semanticSize(long)}.
+     * @param position offset of semantic.
+     * @return semantic.
+     */
+    private Semantic readSemantic(long position) {
+        Semantic semantic = new Semantic();
+
+        semantic.code = buffer.getShort(position) & 0xFFFF;
+        int type = buffer.get(position + 2) & 0xFF;
+        int scale = buffer.get(position + 3);
+        position += 4;
+
+        semantic.type = SemanticType.fromValue(type);
+        semantic.scale = scale;
+        if (type == 128 && scale == 255) {
+            // This is dynamic length string
+            int length = buffer.getInt(position);
+            position += 4;
+            semantic.bytes = new byte[length];
+            getBytes(position, semantic.bytes);
+            return semantic;
+        }
+
+        switch (semantic.type) {
+            case STRDOS:
+            case STRING:
+            case STRUNI:
+                // Texts can't have negative length!
+                semantic.scale = semantic.scale & 0xFF;
+                semantic.charset = semantic.type == SemanticType.STRDOS ? IBM866 :
+                        semantic.type == SemanticType.STRING ? CP1251 : KOI8R;
+                semantic.bytes = new byte[semantic.scale + 1];
+                getBytes(position, semantic.bytes);
+                break;
+            case CHAR:
+                semantic.number = buffer.get(position);
+                break;
+            case SHORT:
+                semantic.number = buffer.getShort(position);
+                break;
+            case LONG:
+                semantic.number = buffer.getInt(position);
+                break;
+            case DOUBLE:
+                semantic.number = buffer.getDouble(position);
+                break;
+            default:
+                break;
+        }
+        return semantic;
+    }
+
+    /**
+     * Copy bytes from absolute offset of buffer, position of buffer not changed.
+     * @param offset offset in buffer.
+     * @param dst destination array.
+     */
+    private void getBytes(long offset, byte[] dst) {
+        buffer.get(offset, dst);
+    }
+
+    /**
+     * Create coordinate sequence of geometry from metric part. If size more than count of points,
+     * rest of sequence filled by first point (clone point or close ring).
+     * Sequence over mapped metric not copied.
+     * @param coordinates coordinates of metric part.
+     * @param count count of points used from coordinates.
+     * @param size size of sequence.
+     * @return coordinate sequence.
+     */
+    private CoordinateSequence createCoordinateSequence(CoordinateSequence coordinates, int count, int size) {
+        if (count == 0) {
+            return geometryFactory.getCoordinateSequenceFactory().create(size, 3);
+        }
+        if (coordinates instanceof SXFCoordinateSequence) {
+            return ((SXFCoordinateSequence) coordinates).resize(count, size);
+        }
+        Coordinate[] sequence = new Coordinate[size];
+        for (int i = 0; i < count; i++) {
+            sequence[i] = new Coordinate(coordinates.getOrdinate(i, 0), coordinates.getOrdinate(i, 1), coordinates.getOrdinate(i, 2));
+        }
+        for (int i = count; i < size; i++) {
+            sequence[i] = new Coordinate(sequence[0]);
+        }
+        return geometryFactory.getCoordinateSequenceFactory().create(sequence);
+    }
+
+    /**
+     * Check first and last points of metric part are equals.
+     * @param coordinates coordinates of metric part.
+     * @return true if closed.
+     */
+    private static boolean isClosed(CoordinateSequence coordinates) {
+        int last = coordinates.size() - 1;
+        for (int n = 0; n < 3; n++) {
+            if (coordinates.getOrdinate(0, n) != coordinates.getOrdinate(last, n)) {
+                return false;
             }
         }
+        return true;
+    }
+
+    /**
+     * Create {@link MultiLineString}.
+     * @param coordinates main record coordinates.
+     * @param subCoordinates sub record coordinates.
+     * @return {@link MultiLineString} geometry.
+     */
+    private Geometry createMultiLineString(CoordinateSequence coordinates, CoordinateSequence[] subCoordinates) {
         LineString[] lines = new LineString[1 + subCoordinates.length];
-        lines[0] = geometryFactory.createLineString(coordinateSequence);
+        // Line of one point is cloned into two points
+        int length = coordinates.size();
+        lines[0] = geometryFactory.createLineString(createCoordinateSequence(coordinates, length, length == 1 ? 2 : length));
 
         for (int i = 0; i < subCoordinates.length; i++) {
-            double[][] subCoordinate = subCoordinates[i];
-            length = subCoordinate.length;
-            if (length == 1) {
-                length = 2;
-                clonePoint = true;
-            } else {
-                clonePoint = false;
-            }
-            coordinateSequence = geometryFactory.getCoordinateSequenceFactory().create(length, 3);
-            for (int k = 0; k < subCoordinate.length; k++) {
-                for (int n = 0; n < 3; n++) {
-                    coordinateSequence.setOrdinate(k, n, subCoordinate[k][n]);
-                }
-            }
-            if (clonePoint) {
-                for (int n = 0; n < 3; n++) {
-                    coordinateSequence.setOrdinate(1, n, subCoordinate[0][n]);
-                }
-            }
-            lines[i + 1] = geometryFactory.createLineString(coordinateSequence);
+            length = subCoordinates[i].size();
+            lines[i + 1] = geometryFactory.createLineString(createCoordinateSequence(subCoordinates[i], length, length == 1 ? 2 : length));
         }
 
         return geometryFactory.createMultiLineString(lines);
@@ -886,56 +1717,21 @@ public class SXFRecord {
      * @param subCoordinates sub record coordinates.
      * @return {@link MultiPolygon} geometry.
      */
-    private Geometry createMultiPolygon(double[][] coordinates, double[][][] subCoordinates) {
-        // By default SQUARE objects is closed
-        boolean isClosed = true;
-        // Check this
-        if (coordinates[0][0] != coordinates[coordinates.length - 1][0] ||
-                coordinates[0][1] != coordinates[coordinates.length - 1][1] ||
-                coordinates[0][2] != coordinates[coordinates.length - 1][2]) {
-            isClosed = false;
-        }
-        CoordinateSequence coordinateSequence = geometryFactory.getCoordinateSequenceFactory().create((isClosed ? coordinates.length : coordinates.length + 1), 3);
-        for (int i = 0; i < coordinates.length; i++) {
-            for (int n = 0; n < 3; n++) {
-                coordinateSequence.setOrdinate(i, n, coordinates[i][n]);
-            }
-        }
-        if (!isClosed) {
-            for (int n = 0; n < 3; n++) {
-                coordinateSequence.setOrdinate(coordinates.length, n, coordinates[0][n]);
-            }
-        }
-        LinearRing shell = geometryFactory.createLinearRing(coordinateSequence);
+    private Geometry createMultiPolygon(CoordinateSequence coordinates, CoordinateSequence[] subCoordinates) {
+        // By default SQUARE objects is closed, check this
+        int length = coordinates.size();
+        LinearRing shell = geometryFactory.createLinearRing(createCoordinateSequence(coordinates, length, isClosed(coordinates) ? length : length + 1));
 
         LinearRing[] holes = new LinearRing[subCoordinates.length];
         for (int i = 0; i < subCoordinates.length; i++) {
-            double[][] holeCoordinates = subCoordinates[i];
+            CoordinateSequence holeCoordinates = subCoordinates[i];
             // In broken files SQUARE may be length = 0. Check this and create empty LinearString.
-            if (holeCoordinates.length == 0) {
+            if (holeCoordinates.size() == 0) {
                 holes[i] = geometryFactory.createLinearRing(new Coordinate[0]);
                 continue;
             }
-            isClosed = true;
-            if (holeCoordinates[0][0] != holeCoordinates[holeCoordinates.length - 1][0] ||
-                    holeCoordinates[0][1] != holeCoordinates[holeCoordinates.length - 1][1] ||
-                    holeCoordinates[0][2] != holeCoordinates[holeCoordinates.length - 1][2]) {
-                isClosed = false;
-            }
-
-            coordinateSequence = geometryFactory.getCoordinateSequenceFactory().create(isClosed ? holeCoordinates.length : holeCoordinates.length + 1, 3);
-            for (int k = 0; k < holeCoordinates.length; k++) {
-                for (int n = 0; n < 3; n++) {
-                    coordinateSequence.setOrdinate(k, n, holeCoordinates[k][n]);
-                }
-            }
-            if (!isClosed) {
-                for (int n = 0; n < 3; n++) {
-                    coordinateSequence.setOrdinate(holeCoordinates.length, n, holeCoordinates[0][n]);
-                }
-            }
-
-            holes[i] = geometryFactory.createLinearRing(coordinateSequence);
+            length = holeCoordinates.size();
+            holes[i] = geometryFactory.createLinearRing(createCoordinateSequence(holeCoordinates, length, isClosed(holeCoordinates) ? length : length + 1));
         }
 
         // Second code define multipolygon or not take from documentation, may be bug in documentation.
@@ -968,24 +1764,13 @@ public class SXFRecord {
      * @param subCoordinates sub record coordinates.
      * @return {@link MultiPoint} geometry.
      */
-    private Geometry createMultiPoint(double[][] coordinates, double[][][] subCoordinates) {
+    private Geometry createMultiPoint(CoordinateSequence coordinates, CoordinateSequence[] subCoordinates) {
         Point[] points = new Point[1 + subCoordinates.length];
-        CoordinateSequence coordinateSequence = geometryFactory.getCoordinateSequenceFactory().create(1, 3);
-        if (coordinates.length > 0) {
-            for (int n = 0; n < 3; n++) {
-                coordinateSequence.setOrdinate(0, n, coordinates[0][n]);
-            }
-        }
-        points[0] = geometryFactory.createPoint(coordinateSequence);
+        // Only first point of each metric used
+        points[0] = geometryFactory.createPoint(createCoordinateSequence(coordinates, Math.min(coordinates.size(), 1), 1));
 
         for (int i = 0; i < subCoordinates.length; i++) {
-            coordinateSequence = geometryFactory.getCoordinateSequenceFactory().create(1, 3);
-            if (subCoordinates[i].length > 0) {
-                for (int n = 0; n < 3; n++) {
-                    coordinateSequence.setOrdinate(0, n, subCoordinates[i][0][n]);
-                }
-            }
-            points[i + 1] = geometryFactory.createPoint(coordinateSequence);
+            points[i + 1] = geometryFactory.createPoint(createCoordinateSequence(subCoordinates[i], Math.min(subCoordinates[i].size(), 1), 1));
         }
 
         return geometryFactory.createMultiPoint(points);
@@ -1046,7 +1831,9 @@ public class SXFRecord {
      */
     public void destroy() {
         geometry = null;
-        texts.clear();
-        semantics.clear();
+        texts = new ArrayList<>();
+        isTextRead = false;
+        semantics = new ArrayList<>();
+        semanticTable = null;
     }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.cleanlogic.sxf4j.enums.Local;
+
+import java.util.Arrays;
+
+/**
+ * Filter of records for {@link SXFReader#records(SXFRecordFilter)}. Conditions checked from cheap to expensive:
+ * excode, local and generalization by fields of header (or record index), then envelope by metric bounds
+ * and codes of semantics without decoding values. All conditions must be true, not set conditions not checked.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public class SXFRecordFilter {
+    private int[] excodes;
+    private int locals = -1;
+    private int minBottom = 0;
+    private int maxBottom = 15;
+    private int minUpper = 0;
+    private int maxUpper = 15;
+    private int[] semantics = new int[0];
+    private Envelope envelope;
+
+    /**
+     * Accept records with one of excodes.
+     * @param excodes classification codes.
+     * @return this filter.
+     */
+    public SXFRecordFilter excodes(int... excodes) {
+        this.excodes = excodes.clone();
+        Arrays.sort(this.excodes);
+        return this;
+    }
+
+    /**
+     * Accept records with one of localizations.
+     * @param locals localizations.
+     * @return this filter.
+     */
+    public SXFRecordFilter local(Local... locals) {
+        this.locals = 0;
+        for (Local local : locals) {
+            this.locals |= 1 << local.ordinal();
+        }
+        return this;
+    }
+
+    /**
+     * Accept records with bottom limit of visibility in range.
+     * @param min minimal value, inclusive.
+     * @param max maximal value, inclusive.
+     * @return this filter.
+     */
+    public SXFRecordFilter bottom(int min, int max) {
+        minBottom = min;
+        maxBottom = max;
+        return this;
+    }
+
+    /**
+     * Accept records with upper limit of visibility in range.
+     * @param min minimal value, inclusive.
+     * @param max maximal value, inclusive.
+     * @return this filter.
+     */
+    public SXFRecordFilter upper(int min, int max) {
+        minUpper = min;
+        maxUpper = max;
+        return this;
+    }
+
+    /**
+     * Accept records which have semantic with code. Can be called many times, all codes required.
+     * @param code code of semantic.
+     * @return this filter.
+     */
+    public SXFRecordFilter semantic(int code) {
+        semantics = Arrays.copyOf(semantics, semantics.length + 1);
+        semantics[semantics.length - 1] = code;
+        return this;
+    }
+
+    /**
+     * Accept records which envelopes intersect envelope.
+     * @param envelope envelope in coordinates of geometries.
+     * @return this filter.
+     */
+    public SXFRecordFilter envelope(Envelope envelope) {
+        this.envelope = envelope;
+        return this;
+    }
+
+    public Envelope getEnvelope() {
+        return envelope;
+    }
+
+    /**
+     * Check conditions of header.
+     * @param excode classification code.
+     * @param flags flags of record header (offset 20).
+     * @return true if accepted.
+     */
+    boolean acceptHeader(int excode, int flags) {
+        if (excodes != null && Arrays.binarySearch(excodes, excode) < 0) {
+            return false;
+        }
+        if ((locals & (1 << (flags & 0xF))) == 0) {
+            return false;
+        }
+        int bottom = (flags >>> 24) & 0xF;
+        int upper = (flags >>> 28) & 0xF;
+        return bottom >= minBottom && bottom <= maxBottom && upper >= minUpper && upper <= maxUpper;
+    }
+
+    /**
+     * Check conditions of semantics.
+     * @param sxfRecord record with read header.
+     * @return true if accepted.
+     */
+    boolean acceptSemantics(SXFRecord sxfRecord) {
+        for (int code : semantics) {
+            if (!sxfRecord.hasSemantic(code)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check all conditions.
+     * @param sxfRecord record with read header.
+     * @return true if accepted.
+     */
+    boolean accept(SXFRecord sxfRecord) {
+        if (!acceptHeader(sxfRecord.getExcode(), sxfRecord.getFlags())) {
+            return false;
+        }
+        if (envelope != null) {
+            double[] bounds = new double[4];
+            sxfRecord.envelope(bounds, 0);
+            if (Double.isNaN(bounds[0]) || bounds[0] > envelope.getMaxX() || bounds[2] < envelope.getMinX() ||
+                    bounds[1] > envelope.getMaxY() || bounds[3] < envelope.getMinY()) {
+                return false;
+            }
+        }
+        return acceptSemantics(sxfRecord);
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.cleanlogic.sxf4j.enums.Local;
+
+import java.nio.Buffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Columnar index of record headers. One row per record (incode), each column is primitive array.
+ * {@link SXFRecord} objects created from this index only by request.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+final class SXFRecordIndex {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int size;
+    /**
+     * Columns on build, released by {@link #complete()}.
+     */
+    private long[] offsetArray;
+    private int[] lengthArray;
+    private int[] excodeArray;
+    private int[] numberArray;
+    private int[] flagArray;
+    /**
+     * Record offset in buffer (position of {@link SXFRecord#IDENTIFIER}).
+     */
+    private LongBuffer offsets;
+    /**
+     * Total length of record with header.
+     */
+    private IntBuffer lengths;
+    private IntBuffer excodes;
+    private IntBuffer numbers;
+    /**
+     * Raw flags of record header: three bytes of info flags and generalization byte.
+     * Localization is first 4 bits.
+     */
+    private IntBuffer flags;
+    /**
+     * Envelopes of records, four values per record: minX, minY, maxX, maxY. Null if not computed.
+     */
+    private volatile DoubleBuffer envelopes;
+    /**
+     * Lookup excode to incodes, built on first lookup.
+     */
+    private volatile IntMultiMap excodeMap;
+    /**
+     * Lookup number to incode, built on first lookup.
+     */
+    private volatile IntMultiMap numberMap;
+
+    SXFRecordIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    SXFRecordIndex(int capacity) {
+        capacity = Math.max(capacity, 16);
+        offsetArray = new long[capacity];
+        lengthArray = new int[capacity];
+        excodeArray = new int[capacity];
+        numberArray = new int[capacity];
+        flagArray = new int[capacity];
+    }
+
+    /**
+     * Index over ready columns, for example mapped from index file. No copy of columns.
+     * @param size count of records.
+     * @param offsets column of offsets.
+     * @param lengths column of lengths.
+     * @param excodes column of excodes.
+     * @param numbers column of numbers.
+     * @param flags column of flags.
+     * @param envelopes envelopes of records or null.
+     */
+    SXFRecordIndex(int size, LongBuffer offsets, IntBuffer lengths, IntBuffer excodes, IntBuffer numbers,
+                   IntBuffer flags, DoubleBuffer envelopes) {
+        this.size = size;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.excodes = excodes;
+        this.numbers = numbers;
+        this.flags = flags;
+        this.envelopes = envelopes;
+    }
+
+    /**
+     * Add record header into index.
+     * @param sxfRecord record with read header.
+     */
+    void add(SXFRecord sxfRecord) {
+        if (size == offsetArray.length) {
+            int capacity = size + (size >> 1);
+            offsetArray = Arrays.copyOf(offsetArray, capacity);
+            lengthArray = Arrays.copyOf(lengthArray, capacity);
+            excodeArray = Arrays.copyOf(excodeArray, capacity);
+            numberArray = Arrays.copyOf(numberArray, capacity);
+            flagArray = Arrays.copyOf(flagArray, capacity);
+        }
+        offsetArray[size] = sxfRecord.getOffset();
+        lengthArray[size] = sxfRecord.getLength();
+        excodeArray[size] = sxfRecord.getExcode();
+        numberArray[size] = sxfRecord.getNumber();
+        flagArray[size] = sxfRecord.getFlags();
+        size++;
+    }
+
+    /**
+     * Complete index after scan: release unused capacity of columns.
+     */
+    void complete() {
+        offsets = LongBuffer.wrap(Arrays.copyOf(offsetArray, size));
+        lengths = IntBuffer.wrap(Arrays.copyOf(lengthArray, size));
+        excodes = IntBuffer.wrap(Arrays.copyOf(excodeArray, size));
+        numbers = IntBuffer.wrap(Arrays.copyOf(numberArray, size));
+        flags = IntBuffer.wrap(Arrays.copyOf(flagArray, size));
+        offsetArray = null;
+        lengthArray = excodeArray = numberArray = flagArray = null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Size of columns and lookup maps in heap, mapped columns (index file) not counted.
+     * @return size in bytes.
+     */
+    long heapSize() {
+        long bytes = 0;
+        long[] offsetArray = this.offsetArray;
+        if (offsetArray != null) {
+            // Offset column and four int columns on build
+            bytes += offsetArray.length * 24L;
+        }
+        bytes += heapSize(offsets, 8) + heapSize(lengths, 4) + heapSize(excodes, 4) + heapSize(numbers, 4) +
+                heapSize(flags, 4) + heapSize(envelopes, 8);
+        IntMultiMap excodeMap = this.excodeMap;
+        if (excodeMap != null) {
+            bytes += excodeMap.heapSize();
+        }
+        IntMultiMap numberMap = this.numberMap;
+        if (numberMap != null) {
+            bytes += numberMap.heapSize();
+        }
+        return bytes;
+    }
+
+    private static long heapSize(Buffer buffer, int size) {
+        return buffer != null && buffer.hasArray() ? (long) buffer.capacity() * size : 0;
+    }
+
+    long getOffset(int incode) {
+        return offsets.get(incode);
+    }
+
+    int getLength(int incode) {
+        return lengths.get(incode);
+    }
+
+    int getExcode(int incode) {
+        return excodes.get(incode);
+    }
+
+    int getNumber(int incode) {
+        return numbers.get(incode);
+    }
+
+    int getFlags(int incode) {
+        return flags.get(incode);
+    }
+
+    Local getLocal(int incode) {
+        return Local.fromValue(flags.get(incode) & 0xF);
+    }
+
+    boolean hasEnvelopes() {
+        return envelopes != null;
+    }
+
+    /**
+     * Set envelopes of records.
+     * @param envelopes four values per record: minX, minY, maxX, maxY.
+     */
+    void setEnvelopes(DoubleBuffer envelopes) {
+        this.envelopes = envelopes;
+    }
+
+    /**
+     * Envelope of record, only if envelopes computed.
+     * @param incode index of record.
+     * @return envelope, null for empty record.
+     */
+    Envelope getEnvelope(int incode) {
+        DoubleBuffer envelopes = this.envelopes;
+        int i = incode * 4;
+        double minX = envelopes.get(i);
+        if (Double.isNaN(minX)) {
+            return null;
+        }
+        return new Envelope(minX, envelopes.get(i + 2), envelopes.get(i + 1), envelopes.get(i + 3));
+    }
+
+    /**
+     * Move envelopes computed before offset of coordinate system was known.
+     * @param dx offset of x.
+     * @param dy offset of y.
+     */
+    void translateEnvelopes(double dx, double dy) {
+        DoubleBuffer envelopes = this.envelopes;
+        for (int i = 0; i < size * 4; i += 4) {
+            envelopes.put(i, envelopes.get(i) + dx);
+            envelopes.put(i + 1, envelopes.get(i + 1) + dy);
+            envelopes.put(i + 2, envelopes.get(i + 2) + dx);
+            envelopes.put(i + 3, envelopes.get(i + 3) + dy);
+        }
+    }
+
+    /**
+     * Raw value of envelope column.
+     * @param i index: incode * 4 + (0 - minX, 1 - minY, 2 - maxX, 3 - maxY).
+     * @return value.
+     */
+    double getEnvelopeValue(int i) {
+        return envelopes.get(i);
+    }
+
+    private IntMultiMap excodeMap() {
+        IntMultiMap excodeMap = this.excodeMap;
+        if (excodeMap == null) {
+            // Many threads may build same map, any of them can be used
+            excodeMap = new IntMultiMap(excodes, size);
+            this.excodeMap = excodeMap;
+        }
+        return excodeMap;
+    }
+
+    private IntMultiMap numberMap() {
+        IntMultiMap numberMap = this.numberMap;
+        if (numberMap == null) {
+            numberMap = new IntMultiMap(numbers, size);
+            this.numberMap = numberMap;
+        }
+        return numberMap;
+    }
+
+    /**
+     * First incode of record with excode.
+     * @param excode excode of record.
+     * @return incode or {@link IntMultiMap#NONE}.
+     */
+    int firstByExcode(int excode) {
+        return excodeMap().first(excode);
+    }
+
+    /**
+     * Next incode of record with same excode.
+     * @param incode current incode.
+     * @return incode or {@link IntMultiMap#NONE}.
+     */
+    int nextByExcode(int incode) {
+        return excodeMap().next(incode);
+    }
+
+    /**
+     * First incode of record with number.
+     * @param number number of record.
+     * @return incode or {@link IntMultiMap#NONE}.
+     */
+    int firstByNumber(int number) {
+        return numberMap().first(number);
+    }
+}
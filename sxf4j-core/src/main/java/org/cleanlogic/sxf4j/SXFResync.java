@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import org.cleanlogic.sxf4j.enums.Local;
+
+/**
+ * Search of next record in damaged SXF ({@link SXFReaderOptions#findNext}). Identifier of record
+ * (bytes FF 7F FF 7F) searched at any offset, eight offsets per long word: each word compared with
+ * all four bytes of identifier at once and zero bytes of difference give offsets of identifier.
+ * Found identifier accepted only if header of record is plausible, identifier bytes inside metric
+ * or semantics are skipped.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+final class SXFResync {
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long BYTES_FF = 0xFFFFFFFFFFFFFFFFL;
+    private static final long BYTES_7F = 0x7F7F7F7F7F7F7F7FL;
+    private static final int HEADER_LENGTH = 32;
+    private static final int MAX_LOCAL = Local.values().length - 1;
+
+    private SXFResync() {
+    }
+
+    /**
+     * Find first plausible record header from position.
+     * @param buffer buffer of SXF.
+     * @param position offset to search from.
+     * @param dataLimit end of SXF data, records must end before it. May be more than limit of buffer
+     *                  if buffer is window of stream.
+     * @return offset of record or -1 if not found in buffer.
+     */
+    static long find(SXFBuffer buffer, long position, long dataLimit) {
+        long limit = buffer.limit();
+        // Usually record is right at position
+        if (limit - position >= HEADER_LENGTH && buffer.getInt(position) == SXFRecord.IDENTIFIER &&
+                isHeader(buffer, position, dataLimit)) {
+            return position;
+        }
+        long p = position;
+        // Each step checks offsets p...p+7, identifier ends in next word
+        while (p + 16 <= limit && p + HEADER_LENGTH <= limit) {
+            long word = buffer.getLong(p);
+            long next = buffer.getLong(p + 8);
+            long matches = zeroBytes(word ^ BYTES_FF) &
+                    zeroBytes(((word >>> 8) | (next << 56)) ^ BYTES_7F) &
+                    zeroBytes(((word >>> 16) | (next << 48)) ^ BYTES_FF) &
+                    zeroBytes(((word >>> 24) | (next << 40)) ^ BYTES_7F);
+            while (matches != 0) {
+                long candidate = p + (Long.numberOfTrailingZeros(matches) >>> 3);
+                if (candidate + HEADER_LENGTH <= limit && isHeader(buffer, candidate, dataLimit)) {
+                    return candidate;
+                }
+                matches &= matches - 1;
+            }
+            p += 8;
+        }
+        for (; p + HEADER_LENGTH <= limit; p++) {
+            if (buffer.getInt(p) == SXFRecord.IDENTIFIER && isHeader(buffer, p, dataLimit)) {
+                return p;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * High bit set in each byte which is zero, other bits are zero. Exact for all bytes, without carries
+     * between bytes.
+     */
+    private static long zeroBytes(long x) {
+        return ~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS);
+    }
+
+    /**
+     * Check header of record with identifier: length not less than header and record ends inside data,
+     * metric inside record, local is known.
+     * @param buffer buffer of SXF.
+     * @param offset offset of identifier, 32 bytes of header available.
+     * @param dataLimit end of SXF data.
+     * @return true if header is plausible.
+     */
+    static boolean isHeader(SXFBuffer buffer, long offset, long dataLimit) {
+        int length = buffer.getInt(offset + 4);
+        if (length < HEADER_LENGTH || offset + length > dataLimit) {
+            return false;
+        }
+        int metricLength = buffer.getInt(offset + 8);
+        if (metricLength < 0 || metricLength > length - HEADER_LENGTH) {
+            return false;
+        }
+        return (buffer.get(offset + 20) & 0xF) <= MAX_LOCAL;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+import java.util.Arrays;
+
+/**
+ * Packed Hilbert R-tree of record envelopes. Records sorted by Hilbert value of envelope center,
+ * then each {@link #NODE_SIZE} consecutive records form leaf node and each {@link #NODE_SIZE} consecutive
+ * nodes form parent node. Tree is read only and stored in flat arrays, children of node i
+ * are nodes (or records) i * NODE_SIZE ... i * NODE_SIZE + NODE_SIZE - 1 of level below.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+final class SXFSpatialIndex {
+    static final int NODE_SIZE = 16;
+    /**
+     * Order of Hilbert curve, grid is 2^15 x 2^15 cells over extent of sheet, so values fit into int.
+     */
+    private static final int HILBERT_ORDER = 15;
+
+    /**
+     * Incodes of records in tree order, records without points not included.
+     */
+    private final int[] incodes;
+    /**
+     * Envelopes of records in tree order: minX, minY, maxX, maxY.
+     */
+    private final double[] bounds;
+    /**
+     * Envelopes of nodes by levels, level 0 - leaf nodes.
+     */
+    private final double[][] levels;
+
+    /**
+     * Build tree from envelopes of record index.
+     * @param sxfRecordIndex record index with envelopes.
+     */
+    SXFSpatialIndex(SXFRecordIndex sxfRecordIndex) {
+        int size = sxfRecordIndex.size();
+        int count = 0;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < size; i++) {
+            if (!Double.isNaN(sxfRecordIndex.getEnvelopeValue(i * 4))) {
+                minX = Math.min(minX, sxfRecordIndex.getEnvelopeValue(i * 4));
+                minY = Math.min(minY, sxfRecordIndex.getEnvelopeValue(i * 4 + 1));
+                maxX = Math.max(maxX, sxfRecordIndex.getEnvelopeValue(i * 4 + 2));
+                maxY = Math.max(maxY, sxfRecordIndex.getEnvelopeValue(i * 4 + 3));
+                count++;
+            }
+        }
+        // Sort by Hilbert value: key in high 32 bits, incode in low bits
+        long[] keys = new long[count];
+        double scaleX = maxX > minX ? ((1 << HILBERT_ORDER) - 1) / (maxX - minX) : 0;
+        double scaleY = maxY > minY ? ((1 << HILBERT_ORDER) - 1) / (maxY - minY) : 0;
+        for (int i = 0, k = 0; i < size; i++) {
+            double x1 = sxfRecordIndex.getEnvelopeValue(i * 4);
+            if (Double.isNaN(x1)) {
+                continue;
+            }
+            double centerX = (x1 + sxfRecordIndex.getEnvelopeValue(i * 4 + 2)) / 2;
+            double centerY = (sxfRecordIndex.getEnvelopeValue(i * 4 + 1) + sxfRecordIndex.getEnvelopeValue(i * 4 + 3)) / 2;
+            int hilbert = hilbert((int) ((centerX - minX) * scaleX), (int) ((centerY - minY) * scaleY));
+            keys[k++] = ((long) hilbert << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        incodes = new int[count];
+        bounds = new double[count * 4];
+        for (int k = 0; k < count; k++) {
+            int incode = (int) keys[k];
+            incodes[k] = incode;
+            for (int j = 0; j < 4; j++) {
+                bounds[k * 4 + j] = sxfRecordIndex.getEnvelopeValue(incode * 4 + j);
+            }
+        }
+
+        int levelCount = 0;
+        for (int n = count; n > NODE_SIZE || levelCount == 0; n = (n + NODE_SIZE - 1) / NODE_SIZE) {
+            levelCount++;
+        }
+        levels = new double[count == 0 ? 0 : levelCount][];
+        double[] children = bounds;
+        for (int level = 0; level < levels.length; level++) {
+            levels[level] = pack(children);
+            children = levels[level];
+        }
+    }
+
+    /**
+     * Envelopes of parent nodes of nodes.
+     * @param children envelopes of children.
+     * @return envelopes of parents.
+     */
+    private static double[] pack(double[] children) {
+        int childCount = children.length / 4;
+        int count = (childCount + NODE_SIZE - 1) / NODE_SIZE;
+        double[] nodes = new double[count * 4];
+        for (int node = 0; node < count; node++) {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            int end = Math.min(childCount, (node + 1) * NODE_SIZE);
+            for (int child = node * NODE_SIZE; child < end; child++) {
+                minX = Math.min(minX, children[child * 4]);
+                minY = Math.min(minY, children[child * 4 + 1]);
+                maxX = Math.max(maxX, children[child * 4 + 2]);
+                maxY = Math.max(maxY, children[child * 4 + 3]);
+            }
+            nodes[node * 4] = minX;
+            nodes[node * 4 + 1] = minY;
+            nodes[node * 4 + 2] = maxX;
+            nodes[node * 4 + 3] = maxY;
+        }
+        return nodes;
+    }
+
+    /**
+     * Distance of cell along Hilbert curve.
+     * @param x column of cell.
+     * @param y row of cell.
+     * @return Hilbert value.
+     */
+    private static int hilbert(int x, int y) {
+        int d = 0;
+        for (int s = 1 << (HILBERT_ORDER - 1); s > 0; s >>>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // Rotate quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Size of tree arrays.
+     * @return size in bytes.
+     */
+    long heapSize() {
+        long bytes = incodes.length * 4L + bounds.length * 8L;
+        for (double[] level : levels) {
+            bytes += level.length * 8L;
+        }
+        return bytes;
+    }
+
+    /**
+     * Incodes of records which envelopes intersect envelope.
+     * @param envelope envelope of query.
+     * @return incodes in ascending order.
+     */
+    int[] query(Envelope envelope) {
+        if (levels.length == 0 || envelope.isNull()) {
+            return new int[0];
+        }
+        Result result = new Result();
+        int top = levels.length - 1;
+        for (int node = 0; node < levels[top].length / 4; node++) {
+            search(top, node, envelope, result);
+        }
+        int[] found = Arrays.copyOf(result.incodes, result.size);
+        Arrays.sort(found);
+        return found;
+    }
+
+    private void search(int level, int node, Envelope envelope, Result result) {
+        double[] nodes = levels[level];
+        if (!intersects(nodes, node, envelope)) {
+            return;
+        }
+        int from = node * NODE_SIZE;
+        if (level == 0) {
+            int end = Math.min(incodes.length, from + NODE_SIZE);
+            for (int i = from; i < end; i++) {
+                if (intersects(bounds, i, envelope)) {
+                    result.add(incodes[i]);
+                }
+            }
+            return;
+        }
+        int end = Math.min(levels[level - 1].length / 4, from + NODE_SIZE);
+        for (int child = from; child < end; child++) {
+            search(level - 1, child, envelope, result);
+        }
+    }
+
+    private static boolean intersects(double[] boxes, int i, Envelope envelope) {
+        return boxes[i * 4] <= envelope.getMaxX() && boxes[i * 4 + 2] >= envelope.getMinX() &&
+                boxes[i * 4 + 1] <= envelope.getMaxY() && boxes[i * 4 + 3] >= envelope.getMinY();
+    }
+
+    /**
+     * Growing array of found incodes.
+     */
+    private static final class Result {
+        private int[] incodes = new int[64];
+        private int size;
+
+        private void add(int incode) {
+            if (size == incodes.length) {
+                incodes = Arrays.copyOf(incodes, size * 2);
+            }
+            incodes[size++] = incode;
+        }
+    }
+}
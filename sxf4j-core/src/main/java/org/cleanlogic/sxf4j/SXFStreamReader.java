@@ -0,0 +1,263 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.PrecisionModel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Forward only reader of SXF from not seekable source: pipe, socket, archive entry and etc.
+ * Passport, descriptor and records read through one reusable buffer, which grows only up to size of largest record.
+ * Record returned by {@link #next()} is reused and valid only until next call: its geometry, texts and semantics
+ * must be read before.
+ * <p>
+ * Offset of coordinate system (see {@link SXFPassport#getDXY0()}) detected by sheet border record, as in
+ * {@link SXFReader}, but stream can't be read ahead: records before border record decoded without offset.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public class SXFStreamReader implements Closeable {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final ReadableByteChannel readableByteChannel;
+    private final SXFReaderOptions sxfReaderOptions;
+    /**
+     * Buffer in read mode: bytes from position to limit are read from channel and not used yet.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY).order(ByteOrder.LITTLE_ENDIAN);
+    private boolean eof = false;
+
+    private final SXFPassport sxfPassport;
+    private final SXFDescriptor sxfDescriptor;
+    private final GeometryFactory geometryFactory;
+    private final SXFStringTable sxfStringTable = new SXFStringTable(SXFStringTable.DEFAULT_SIZE);
+    /**
+     * Reused record.
+     */
+    private final SXFRecord sxfRecord;
+    private boolean borderFound = false;
+
+    public SXFStreamReader(InputStream inputStream) throws IOException {
+        this(Channels.newChannel(inputStream), new SXFReaderOptions());
+    }
+
+    public SXFStreamReader(ReadableByteChannel readableByteChannel) throws IOException {
+        this(readableByteChannel, new SXFReaderOptions());
+    }
+
+    /**
+     * Constructor of SXF stream reader. Passport and descriptor read from channel immediately.
+     * @param readableByteChannel source of SXF.
+     * @param sxfReaderOptions options of reader, only {@link SXFReaderOptions#strict} and {@link SXFReaderOptions#findNext}
+     *                         are used. {@link SXFReaderOptions#coordinateSequenceFactory} is ignored: buffer of stream
+     *                         is reused, so geometries over buffer become wrong after next record.
+     * @throws IOException exception if wrong.
+     */
+    public SXFStreamReader(ReadableByteChannel readableByteChannel, SXFReaderOptions sxfReaderOptions) throws IOException {
+        this.readableByteChannel = readableByteChannel;
+        this.sxfReaderOptions = sxfReaderOptions;
+        buffer.flip();
+
+        // Lengths of passport and descriptor, bad values checked by passport and descriptor
+        if (!fill(8)) {
+            throw new IOException("Unexpected end of SXF stream");
+        }
+        int passportLength = buffer.getInt(4) == SXFPassport.LENGTH_3 ? SXFPassport.LENGTH_3 : SXFPassport.LENGTH_4;
+        fill(passportLength + 8);
+        int descriptorLength = buffer.limit() >= passportLength + 8 && buffer.getInt(passportLength + 4) == SXFDescriptor.LENGTH_3 ?
+                SXFDescriptor.LENGTH_3 : SXFDescriptor.LENGTH_4;
+        if (!fill(passportLength + descriptorLength)) {
+            throw new IOException("Unexpected end of SXF stream");
+        }
+
+        sxfPassport = new SXFPassport();
+        sxfPassport.read(buffer, sxfReaderOptions.strict);
+
+        // Geometries copy coordinates: buffer reused for next records
+        geometryFactory = new GeometryFactory(new PrecisionModel(PrecisionModel.FLOATING), sxfPassport.srid());
+
+        sxfDescriptor = new SXFDescriptor(sxfPassport);
+        sxfDescriptor.read(buffer, sxfReaderOptions.strict);
+
+        sxfRecord = new SXFRecord(sxfPassport, geometryFactory, sxfStringTable);
+    }
+
+    /**
+     * Make at least size bytes available from position of buffer. Buffer compacted or grows, so previous
+     * offsets in buffer become invalid.
+     * @param size count of bytes.
+     * @return false if stream ends before.
+     * @throws IOException exception if wrong.
+     */
+    private boolean fill(int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return true;
+        }
+        if (buffer.capacity() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+            bigger.put(buffer);
+            buffer = bigger;
+        } else {
+            buffer.compact();
+        }
+        while (buffer.position() < size && !eof) {
+            if (readableByteChannel.read(buffer) < 0) {
+                eof = true;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= size;
+    }
+
+    public SXFPassport getPassport() {
+        return sxfPassport;
+    }
+
+    public SXFDescriptor getDescriptor() {
+        return sxfDescriptor;
+    }
+
+    /**
+     * Read next record. Returned object is same for all records, it valid until next call.
+     * @return record or null if stream ends.
+     * @throws IOException exception if wrong.
+     */
+    public SXFRecord next() throws IOException {
+        while (fill(32)) {
+            int position = buffer.position();
+            if (sxfReaderOptions.findNext) {
+                // Search plausible header in read bytes, end of record may be not read yet
+                long found = SXFResync.find(SXFBuffer.wrap(buffer), position, Long.MAX_VALUE);
+                if (found < 0) {
+                    // Identifier may start in last bytes
+                    buffer.position(Math.max(position + 1, buffer.limit() - 31));
+                    continue;
+                }
+                position = (int) found;
+                buffer.position(position);
+            }
+            int length = buffer.getInt(position + 4);
+            if (length < 32) {
+                String message = "Wrong length of record " + length + ", stream stopped";
+                if (sxfReaderOptions.strict) {
+                    throw new IOException(message);
+                }
+                System.err.println(message);
+                return null;
+            }
+            if (!fill(length)) {
+                String message = "Unexpected end of SXF stream, record length " + length;
+                if (sxfReaderOptions.strict) {
+                    throw new IOException(message);
+                }
+                System.err.println(message);
+                return null;
+            }
+            sxfRecord.destroy();
+            if (!sxfRecord.read(buffer, sxfReaderOptions.strict, false) || sxfRecord.getIdentifier() != SXFRecord.IDENTIFIER) {
+                if (sxfReaderOptions.findNext) {
+                    // Search next header after wrong one
+                    buffer.position(position + 1);
+                    continue;
+                }
+                String message = "Wrong record header, stream stopped";
+                if (sxfReaderOptions.strict) {
+                    throw new IOException(message);
+                }
+                System.err.println(message);
+                return null;
+            }
+            detectBorder();
+            return sxfRecord;
+        }
+        return null;
+    }
+
+    /**
+     * If record is first sheet border record, set offset of coordinate system into passport.
+     * @throws IOException exception if wrong.
+     */
+    private void detectBorder() throws IOException {
+        if (borderFound || sxfRecord.getExcode() != sxfPassport.getBorderExcode()) {
+            return;
+        }
+        borderFound = true;
+        Geometry geometry = sxfRecord.geometry();
+        double dx0 = sxfPassport.getXY()[0][0] - geometry.getCoordinates()[0].y;
+        double dy0 = sxfPassport.getXY()[0][1] - geometry.getCoordinates()[0].x;
+        sxfPassport.setDXY0(new double[] {dx0, dy0});
+        sxfRecord.destroy();
+    }
+
+    /**
+     * Records of stream, see {@link #next()}. Stream can be iterated once.
+     * @return iterable of records.
+     */
+    public Iterable<SXFRecord> records() {
+        return new Iterable<SXFRecord>() {
+            @Override
+            public Iterator<SXFRecord> iterator() {
+                return new Iterator<SXFRecord>() {
+                    private SXFRecord next;
+                    private boolean ready = false;
+
+                    @Override
+                    public boolean hasNext() {
+                        if (!ready) {
+                            try {
+                                next = SXFStreamReader.this.next();
+                            } catch (IOException e) {
+                                throw new IllegalStateException(e);
+                            }
+                            ready = true;
+                        }
+                        return next != null;
+                    }
+
+                    @Override
+                    public SXFRecord next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        ready = false;
+                        return next;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        readableByteChannel.close();
+    }
+}
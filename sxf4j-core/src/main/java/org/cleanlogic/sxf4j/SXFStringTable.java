@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * Decoder of texts and string semantics with deduplication of repeated values (names of roads, rivers and etc.).
+ * Bytes decoded by decoders of current thread into reused char buffer, and string created only if same
+ * string not found in table. Table is fixed size cache without locks: slot chosen by hash of chars,
+ * new string replaces old string of slot. Reader has own table, so strings of closed reader not kept.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+final class SXFStringTable {
+    /**
+     * Table without deduplication, for records created without reader.
+     */
+    static final SXFStringTable NONE = new SXFStringTable(0);
+    static final int DEFAULT_SIZE = 4096;
+    /**
+     * Longer strings are rarely repeated, they not stored.
+     */
+    private static final int MAX_LENGTH = 128;
+
+    private static final ThreadLocal<Decoders> DECODERS = new ThreadLocal<Decoders>() {
+        @Override
+        protected Decoders initialValue() {
+            return new Decoders();
+        }
+    };
+
+    private final String[] strings;
+    private final int mask;
+
+    /**
+     * Create table.
+     * @param size count of slots, power of 2, or 0 for no deduplication.
+     */
+    SXFStringTable(int size) {
+        strings = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Decode bytes.
+     * @param bytes bytes of string.
+     * @param offset offset of first byte.
+     * @param length count of bytes.
+     * @param charset charset of bytes.
+     * @param trim remove leading and trailing whitespace, as {@link String#trim()}.
+     * @return string.
+     */
+    String decode(byte[] bytes, int offset, int length, Charset charset, boolean trim) {
+        CharBuffer chars = DECODERS.get().decode(ByteBuffer.wrap(bytes, offset, length), charset);
+        char[] array = chars.array();
+        int start = 0;
+        int end = chars.position();
+        if (trim) {
+            while (start < end && array[start] <= ' ') {
+                start++;
+            }
+            while (end > start && array[end - 1] <= ' ') {
+                end--;
+            }
+        }
+        int count = end - start;
+        if (strings.length == 0 || count > MAX_LENGTH) {
+            return new String(array, start, count);
+        }
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + array[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String string = strings[slot];
+        if (string != null && equals(string, array, start, count)) {
+            return string;
+        }
+        string = new String(array, start, count);
+        strings[slot] = string;
+        return string;
+    }
+
+    /**
+     * Size of table and stored strings, approximately.
+     * @return size in bytes.
+     */
+    long heapSize() {
+        long bytes = strings.length * 8L;
+        for (String string : strings) {
+            if (string != null) {
+                bytes += 40 + string.length() * 2L;
+            }
+        }
+        return bytes;
+    }
+
+    private static boolean equals(String string, char[] array, int start, int count) {
+        if (string.length() != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (string.charAt(i) != array[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decoders of thread, created on first use of charset, and output buffer.
+     */
+    private static final class Decoders {
+        private Charset[] charsets = new Charset[0];
+        private CharsetDecoder[] decoders = new CharsetDecoder[0];
+        private CharBuffer chars = CharBuffer.allocate(256);
+
+        /**
+         * Decode bytes into buffer of thread, malformed bytes replaced same as by {@link String#String(byte[], Charset)}.
+         * @return buffer, chars from 0 to position.
+         */
+        private CharBuffer decode(ByteBuffer bytes, Charset charset) {
+            CharsetDecoder decoder = decoder(charset);
+            int capacity = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+            if (chars.capacity() < capacity) {
+                chars = CharBuffer.allocate(capacity);
+            }
+            chars.clear();
+            decoder.reset();
+            decoder.decode(bytes, chars, true);
+            decoder.flush(chars);
+            return chars;
+        }
+
+        private CharsetDecoder decoder(Charset charset) {
+            for (int i = 0; i < charsets.length; i++) {
+                if (charsets[i] == charset) {
+                    return decoders[i];
+                }
+            }
+            CharsetDecoder decoder = charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            int count = charsets.length;
+            charsets = Arrays.copyOf(charsets, count + 1);
+            decoders = Arrays.copyOf(decoders, count + 1);
+            charsets[count] = charset;
+            decoders[count] = decoder;
+            return decoder;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import org.cleanlogic.sxf4j.enums.Local;
+import org.cleanlogic.sxf4j.utils.Utils;
+
+import java.io.IOException;
+
+/**
+ * Writer of record geometry as hex of EWKB (big endian, with SRID and Z), for PostGIS COPY and INSERT.
+ * Output is same as {@link Utils#geometryAsWKB(com.vividsolutions.jts.geom.Geometry)} of {@link SXFRecord#geometry()},
+ * but coordinates streamed by chunks from metric (see {@link SXFRecord#visitCoordinates(SXFCoordinateVisitor, int)}),
+ * so geometry and array of points not created. Records which geometry depends on more than metric
+ * (multipolygons with check of holes, parts without points) written through geometry.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public final class SXFWkbWriter implements SXFCoordinateVisitor {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final int POINT = 1;
+    private static final int LINE_STRING = 2;
+    private static final int POLYGON = 3;
+    private static final int MULTI_POINT = 4;
+    private static final int MULTI_LINE_STRING = 5;
+    private static final int MULTI_POLYGON = 6;
+    private static final int FLAG_Z = 0x80000000;
+    private static final int FLAG_SRID = 0x20000000;
+    /**
+     * Hex chars collected before write into output.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Appendable out;
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 64);
+    private final Local local;
+    private final int srid;
+    private final int[] counts;
+    private final boolean[] closed;
+    /**
+     * First point of current part, written again to close ring or complete line of one point.
+     */
+    private final double[] first = new double[3];
+    private int part = -1;
+    private int written;
+
+    private SXFWkbWriter(SXFRecord sxfRecord, Appendable out, int[] counts, boolean[] closed) {
+        this.out = out;
+        this.local = sxfRecord.getLocal();
+        this.srid = sxfRecord.getSrid();
+        this.counts = counts;
+        this.closed = closed;
+    }
+
+    /**
+     * Write geometry of record as hex of EWKB.
+     * @param sxfRecord record with read header.
+     * @param out output.
+     * @throws IOException exception if wrong.
+     */
+    public static void write(SXFRecord sxfRecord, Appendable out) throws IOException {
+        Local local = sxfRecord.getLocal();
+        boolean[] closed = new boolean[sxfRecord.getSubrecordCount() + 1];
+        int[] counts = local == null ? null : sxfRecord.parts(closed);
+        if (counts == null || !isStreamable(sxfRecord, counts)) {
+            out.append(Utils.geometryAsWKB(sxfRecord.geometry()));
+            return;
+        }
+        SXFWkbWriter sxfWkbWriter = new SXFWkbWriter(sxfRecord, out, counts, closed);
+        sxfWkbWriter.begin();
+        sxfRecord.visitCoordinates(sxfWkbWriter);
+        sxfWkbWriter.endPart();
+        sxfWkbWriter.flush();
+    }
+
+    private static boolean isStreamable(SXFRecord sxfRecord, int[] counts) {
+        if (sxfRecord.getLocal() == Local.SQUARE) {
+            // Holes may become shells, see SXFRecord#createMultiPolygon
+            if (sxfRecord.isMultiPolygon() && counts.length > 1) {
+                return false;
+            }
+            return counts[0] > 0;
+        }
+        for (int count : counts) {
+            if (count == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void begin() {
+        switch (local) {
+            case SQUARE:
+                writeHeader(MULTI_POLYGON);
+                writeInt(1);
+                writeHeader(POLYGON);
+                writeInt(counts.length);
+                break;
+            case POINT:
+                writeHeader(MULTI_POINT);
+                writeInt(counts.length);
+                break;
+            default:
+                writeHeader(MULTI_LINE_STRING);
+                writeInt(counts.length);
+                break;
+        }
+    }
+
+    @Override
+    public void part(int part, int pointCount) throws IOException {
+        endPart();
+        this.part = part;
+        written = 0;
+        switch (local) {
+            case SQUARE:
+                writeInt(pointCount == 0 || closed[part] ? pointCount : pointCount + 1);
+                break;
+            case POINT:
+                writeHeader(POINT);
+                break;
+            default:
+                writeHeader(LINE_STRING);
+                writeInt(pointCount == 1 ? 2 : pointCount);
+                break;
+        }
+    }
+
+    @Override
+    public void coordinates(double[] coordinates, int count) throws IOException {
+        if (written == 0 && count > 0) {
+            System.arraycopy(coordinates, 0, first, 0, 3);
+        }
+        // Point geometry has only first point of part
+        int end = local == Local.POINT ? (written == 0 ? Math.min(count, 1) : 0) : count;
+        for (int i = 0; i < end; i++) {
+            writePoint(coordinates, i * 3);
+            if (buffer.length() >= BUFFER_SIZE) {
+                flush();
+            }
+        }
+        written += count;
+    }
+
+    /**
+     * Complete current part: close ring, repeat point of line of one point.
+     */
+    private void endPart() {
+        if (part < 0 || written == 0) {
+            return;
+        }
+        if ((local == Local.SQUARE && !closed[part]) || (local != Local.SQUARE && local != Local.POINT && written == 1)) {
+            writePoint(first, 0);
+        }
+    }
+
+    private void writeHeader(int type) {
+        // Byte order: big endian
+        writeByte(0);
+        writeInt(type | FLAG_Z | FLAG_SRID);
+        writeInt(srid);
+    }
+
+    private void writePoint(double[] coordinates, int offset) {
+        writeLong(Double.doubleToLongBits(coordinates[offset]));
+        writeLong(Double.doubleToLongBits(coordinates[offset + 1]));
+        writeLong(Double.doubleToLongBits(coordinates[offset + 2]));
+    }
+
+    private void writeByte(int value) {
+        buffer.append(HEX[(value >>> 4) & 0xF]).append(HEX[value & 0xF]);
+    }
+
+    private void writeInt(int value) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            writeByte(value >>> shift);
+        }
+    }
+
+    private void writeLong(long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (value >>> shift));
+        }
+    }
+
+    private void flush() throws IOException {
+        out.append(buffer);
+        buffer.setLength(0);
+    }
+}
@@ -100,19 +100,23 @@ public class Utils {
      * Recursive search files by extension filter
      * @param file where will be search processed
      * @param files list of finded files
-     * @param filter file extension filter (.sxf)
+     * @param filters file extension filters (.sxf, .zip)
      */
-    public static void search(File file, List<File> files, String filter) {
+    public static void search(File file, List<File> files, String... filters) {
         File[] listFiles = file.listFiles();
         if (listFiles == null) {
             return;
         }
         for (File _file : listFiles) {
             if (_file.isDirectory()) {
-                search(_file, files, filter);
+                search(_file, files, filters);
             } else if (_file.isFile()) {
-                if (_file.getName().toLowerCase().endsWith(filter.toLowerCase())) {
-                    files.add(_file);
+                String name = _file.getName().toLowerCase();
+                for (String filter : filters) {
+                    if (name.endsWith(filter.toLowerCase())) {
+                        files.add(_file);
+                        break;
+                    }
                 }
             }
         }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Simple benchmark of geometry decode. Not a unit test, run through main:
+ * <pre>
+ *     java -cp ... org.cleanlogic.sxf4j.SxfReaderBenchmark [iterations] [file.sxf ...]
+ * </pre>
+ * Prints time of sequential decode and parallel decode with 1, 2, 4... threads.
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public class SxfReaderBenchmark {
+    public static void main(String args[]) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        String[] files = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) :
+                new String[] {"src/test/resources/K37007.SXF", "src/test/resources/L37141w.SXF"};
+        for (String fileName : files) {
+            SXFReader sxfReader = new SXFReader(new File(fileName));
+            System.out.println(String.format("%s: %d records", fileName, sxfReader.getCount()));
+
+            // Warm up
+            sequential(sxfReader);
+            sxfReader.parallelGeometries();
+
+            long start = System.nanoTime();
+            int points = 0;
+            for (int i = 0; i < iterations; i++) {
+                points = sequential(sxfReader);
+            }
+            double sequential = (System.nanoTime() - start) / 1e6 / iterations;
+            System.out.println(String.format("\tsequential:\t%.2f ms (%d points)", sequential, points));
+
+            int processors = Runtime.getRuntime().availableProcessors();
+            for (int threads = 1; threads <= processors; threads <<= 1) {
+                ForkJoinPool forkJoinPool = new ForkJoinPool(threads);
+                sxfReader.parallelGeometries(forkJoinPool);
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) {
+                    sxfReader.parallelGeometries(forkJoinPool);
+                }
+                double parallel = (System.nanoTime() - start) / 1e6 / iterations;
+                System.out.println(String.format("\tparallel %d:\t%.2f ms (speedup %.2f)", threads, parallel, sequential / parallel));
+                forkJoinPool.shutdown();
+            }
+            sxfReader.close();
+        }
+    }
+
+    private static int sequential(SXFReader sxfReader) throws IOException {
+        int points = 0;
+        for (int i = 0; i < sxfReader.getCount(); i++) {
+            Geometry geometry = sxfReader.getRecordByIncode(i).geometry();
+            points += geometry.getNumPoints();
+        }
+        return points;
+    }
+}
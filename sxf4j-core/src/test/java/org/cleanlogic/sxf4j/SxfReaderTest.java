@@ -1,12 +1,38 @@
 package org.cleanlogic.sxf4j;
 
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import junit.framework.TestCase;
 import junit.textui.TestRunner;
+import org.cleanlogic.sxf4j.enums.Local;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
@@ -51,4 +77,753 @@ public class SxfReaderTest extends TestCase {
         sxfReader.close();
         assertNotNull(polygon);
     }
+
+    @Test
+    public void testSxfReaderStreaming() throws IOException {
+        File file = new File("src/test/resources/K37007.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        int count = sxfReader.getCount();
+        sxfReader.close();
+
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.streaming = true;
+        sxfReader = new SXFReader(file, sxfReaderOptions);
+        int streamed = 0;
+        for (SXFRecord sxfRecord : sxfReader.records()) {
+            assertNotNull(sxfRecord.geometry());
+            streamed++;
+        }
+        assertEquals(count, streamed);
+        // Random access in streaming mode scans headers at first call
+        assertEquals(count, sxfReader.getCount());
+        sxfReader.close();
+    }
+
+    @Test
+    public void testSxfReaderIndex() throws IOException {
+        File file = new File("src/test/resources/K37007.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        assertEquals(sxfReader.getDescriptor().getRecordCount(), sxfReader.getCount());
+        for (int i = 0; i < sxfReader.getCount(); i++) {
+            SXFRecord sxfRecord = sxfReader.getRecordByIncode(i);
+            assertEquals(sxfReader.getExcode(i), sxfRecord.getExcode());
+            assertEquals(sxfReader.getNumber(i), sxfRecord.getNumber());
+            assertEquals(sxfReader.getLocal(i), sxfRecord.getLocal());
+        }
+        sxfReader.close();
+    }
+
+    @Test
+    public void testSxfReaderLookup() throws IOException {
+        File file = new File("src/test/resources/L37141w.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        for (int i = 0; i < sxfReader.getCount(); i++) {
+            int excode = sxfReader.getExcode(i);
+            int count = 0;
+            for (int k = 0; k < sxfReader.getCount(); k++) {
+                if (sxfReader.getExcode(k) == excode) {
+                    count++;
+                }
+            }
+            List<SXFRecord> sxfRecords = sxfReader.getRecordByExcode(excode);
+            assertEquals(count, sxfRecords.size());
+            assertEquals(excode, sxfRecords.get(0).getExcode());
+
+            SXFRecord sxfRecord = sxfReader.getRecordByNumber(sxfReader.getNumber(i));
+            assertNotNull(sxfRecord);
+            assertEquals(sxfReader.getNumber(i), sxfRecord.getNumber());
+            i += 97;
+        }
+        assertTrue(sxfReader.getRecordByExcode(-1).isEmpty());
+        assertNull(sxfReader.getRecordByNumber(-1));
+        sxfReader.close();
+    }
+
+    @Test
+    public void testSxfReaderConcurrent() throws Exception {
+        File file = new File("src/test/resources/K37007.SXF");
+        final SXFReader sxfReader = new SXFReader(file);
+        final int count = sxfReader.getCount();
+        final String[] expected = new String[count];
+        for (int i = 0; i < count; i++) {
+            expected[i] = decode(sxfReader.getRecordByIncode(i));
+        }
+
+        int threadCount = 8;
+        final AtomicInteger mismatches = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final int shift = t;
+            futures.add(executorService.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int k = 0; k < count; k++) {
+                        // Each thread walks records in own order
+                        int incode = (k * 7 + shift * 131) % count;
+                        if (!expected[incode].equals(decode(sxfReader.getRecordByIncode(incode)))) {
+                            mismatches.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+        sxfReader.close();
+        assertEquals(0, mismatches.get());
+    }
+
+    @Test
+    public void testSxfReaderParallelGeometries() throws IOException {
+        File file = new File("src/test/resources/K37007.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        Geometry[] geometries = sxfReader.parallelGeometries();
+        assertEquals(sxfReader.getCount(), geometries.length);
+        for (int i = 0; i < geometries.length; i++) {
+            assertEquals(sxfReader.getRecordByIncode(i).geometry(), geometries[i]);
+        }
+        sxfReader.close();
+    }
+
+    @Test
+    public void testSxfReaderMappedCoordinates() throws IOException {
+        File file = new File("src/test/resources/L37141w.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.coordinateSequenceFactory = SXFCoordinateSequenceFactory.instance();
+        SXFReader mappedReader = new SXFReader(file, sxfReaderOptions);
+        assertEquals(sxfReader.getCount(), mappedReader.getCount());
+        for (int i = 0; i < sxfReader.getCount(); i++) {
+            Geometry geometry = sxfReader.getRecordByIncode(i).geometry();
+            Geometry mapped = mappedReader.getRecordByIncode(i).geometry();
+            assertTrue(geometry.equalsExact(mapped));
+            assertEquals(geometry.getEnvelopeInternal(), mapped.getEnvelopeInternal());
+        }
+        mappedReader.close();
+        sxfReader.close();
+    }
+
+    @Test
+    public void testSxfReaderSidecarIndex() throws IOException {
+        File directory = Files.createTempDirectory("sxfidx").toFile();
+        File file = new File(directory, "K37007.SXF");
+        Files.copy(new File("src/test/resources/K37007.SXF").toPath(), file.toPath());
+        File indexFile = SXFIndexFile.indexFile(file, null);
+
+        SXFReader sxfReader = new SXFReader(file);
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.sidecarIndex = true;
+        // First open scan headers and write index
+        SXFReader indexedReader = new SXFReader(file, sxfReaderOptions);
+        indexedReader.close();
+        assertTrue(indexFile.isFile());
+        // Second open map index
+        indexedReader = new SXFReader(file, sxfReaderOptions);
+        assertEquals(sxfReader.getCount(), indexedReader.getCount());
+        for (int i = 0; i < sxfReader.getCount(); i++) {
+            assertEquals(sxfReader.getExcode(i), indexedReader.getExcode(i));
+            assertEquals(sxfReader.getNumber(i), indexedReader.getNumber(i));
+            assertEquals(sxfReader.getLocal(i), indexedReader.getLocal(i));
+            assertEquals(sxfReader.getEnvelope(i), indexedReader.getEnvelope(i));
+        }
+        assertEquals(sxfReader.getRecordByNumber(1225).geometry(), indexedReader.getRecordByNumber(1225).geometry());
+        indexedReader.close();
+        sxfReader.close();
+
+        // Changed file invalidates index
+        assertTrue(file.setLastModified(file.lastModified() + 2000));
+        indexedReader = new SXFReader(file, sxfReaderOptions);
+        indexedReader.close();
+        assertEquals(file.lastModified(), ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()))
+                .order(ByteOrder.LITTLE_ENDIAN).getLong(16));
+
+        // Index which can not be written not fails strict open
+        File notDirectory = new File(directory, "not-directory");
+        assertTrue(notDirectory.createNewFile());
+        sxfReaderOptions.strict = true;
+        sxfReaderOptions.indexDirectory = notDirectory;
+        indexedReader = new SXFReader(file, sxfReaderOptions);
+        assertEquals(sxfReader.getCount(), indexedReader.getCount());
+        indexedReader.close();
+
+        for (File child : directory.listFiles()) {
+            assertTrue(child.delete());
+        }
+        assertTrue(directory.delete());
+    }
+
+    @Test
+    public void testSxfReaderSegments() throws IOException {
+        File file = new File("src/test/resources/K37007.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        // Small segments, many values and records cross borders of segments
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.segmentShift = 12;
+        SXFReader segmentedReader = new SXFReader(file, sxfReaderOptions);
+        assertEquals(sxfReader.getCount(), segmentedReader.getCount());
+        for (int i = 0; i < sxfReader.getCount(); i++) {
+            assertEquals(decode(sxfReader.getRecordByIncode(i)), decode(segmentedReader.getRecordByIncode(i)));
+        }
+        segmentedReader.close();
+        sxfReader.close();
+    }
+
+    @Test
+    public void testSxfReaderCheckSum() throws IOException {
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.strict = true;
+        sxfReaderOptions.verifyCheckSum = true;
+        sxfReaderOptions.segmentShift = 12;
+        for (String name : new String[] {"K37007.SXF", "L3710.SXF", "L37141w.SXF"}) {
+            SXFReader sxfReader = new SXFReader(new File("src/test/resources/" + name), sxfReaderOptions);
+            assertTrue(sxfReader.verifyCheckSum());
+            sxfReader.close();
+        }
+
+        File file = File.createTempFile("sxf4j", ".sxf");
+        try {
+            byte[] bytes = Files.readAllBytes(new File("src/test/resources/K37007.SXF").toPath());
+            bytes[bytes.length / 2]++;
+            Files.write(file.toPath(), bytes);
+            try {
+                new SXFReader(file, sxfReaderOptions);
+                fail("Wrong checksum not detected");
+            } catch (IOException e) {
+                // Expected
+            }
+            SXFReader sxfReader = new SXFReader(file);
+            assertFalse(sxfReader.verifyCheckSum());
+            assertEquals(sxfReader.getPassport().getCheckSum() + 1, sxfReader.calculateCheckSum());
+            sxfReader.close();
+        } finally {
+            file.delete();
+        }
+
+        // Large buffer summed by parts in pool
+        byte[] bytes = new byte[20 * 1024 * 1024 + 13];
+        new Random(7).nextBytes(bytes);
+        int expected = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (i < 12 || i >= 16) {
+                expected += bytes[i];
+            }
+        }
+        assertEquals(expected, SXFCheckSum.compute(SXFBuffer.wrap(ByteBuffer.wrap(bytes)), 12, new ForkJoinPool(4)));
+    }
+
+    @Test
+    public void testSxfReaderResync() throws IOException {
+        File source = new File("src/test/resources/K37007.SXF");
+        SXFReader sxfReader = new SXFReader(source);
+        int damaged = 100;
+        int offset = (int) sxfReader.getRecordByIncode(damaged).getOffset();
+        int next = (int) sxfReader.getRecordByIncode(damaged + 1).getOffset();
+        // Wrong length of record and three garbage bytes after it: next records are not aligned
+        byte[] bytes = Files.readAllBytes(source.toPath());
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).putInt(offset + 4, 7);
+        byte[] broken = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, broken, 0, next);
+        broken[next] = (byte) 0xFF;
+        broken[next + 1] = 0x7F;
+        broken[next + 2] = 0x11;
+        System.arraycopy(bytes, next, broken, next + 3, bytes.length - next);
+        File file = File.createTempFile("sxf4j", ".sxf");
+        try {
+            Files.write(file.toPath(), broken);
+            SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+            sxfReaderOptions.findNext = true;
+            SXFReader brokenReader = new SXFReader(file, sxfReaderOptions);
+            assertEquals(sxfReader.getCount() - 1, brokenReader.getCount());
+            for (int i = 0; i < brokenReader.getCount(); i++) {
+                int incode = i < damaged ? i : i + 1;
+                assertEquals(decode(sxfReader.getRecordByIncode(incode)), decode(brokenReader.getRecordByIncode(i)));
+            }
+            brokenReader.close();
+
+            SXFStreamReader sxfStreamReader = new SXFStreamReader(Channels.newChannel(new FileInputStream(file)),
+                    sxfReaderOptions);
+            int count = 0;
+            while (sxfStreamReader.next() != null) {
+                count++;
+            }
+            assertEquals(sxfReader.getCount() - 1, count);
+            sxfStreamReader.close();
+        } finally {
+            file.delete();
+        }
+        sxfReader.close();
+    }
+
+    @Test
+    public void testSxfReaderQuery() throws IOException {
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.spatialIndex = true;
+        for (String name : new String[] {"K37007.SXF", "L37141w.SXF"}) {
+            File file = new File("src/test/resources/" + name);
+            SXFReader sxfReader = new SXFReader(file);
+            SXFReader indexedReader = new SXFReader(file, sxfReaderOptions);
+            Envelope[] envelopes = new Envelope[sxfReader.getCount()];
+            Envelope sheet = new Envelope();
+            for (int i = 0; i < sxfReader.getCount(); i++) {
+                // Envelope from metric is same as envelope of decoded geometry
+                envelopes[i] = sxfReader.getEnvelope(i);
+                assertEquals(envelopes[i], indexedReader.getEnvelope(i));
+                if (envelopes[i] != null) {
+                    sheet.expandToInclude(envelopes[i]);
+                }
+            }
+            Random random = new Random(11);
+            for (int q = 0; q < 50; q++) {
+                double x = sheet.getMinX() + random.nextDouble() * sheet.getWidth();
+                double y = sheet.getMinY() + random.nextDouble() * sheet.getHeight();
+                double size = random.nextDouble() * sheet.getWidth() / 10;
+                Envelope query = new Envelope(x, x + size, y, y + size);
+                List<Long> expected = new ArrayList<>();
+                for (int i = 0; i < envelopes.length; i++) {
+                    if (envelopes[i] != null && envelopes[i].intersects(query)) {
+                        expected.add(sxfReader.getRecordByIncode(i).getOffset());
+                    }
+                }
+                List<Long> found = new ArrayList<>();
+                for (SXFRecord sxfRecord : indexedReader.query(query)) {
+                    found.add(sxfRecord.getOffset());
+                }
+                assertEquals(expected, found);
+            }
+            // Index built by first query without option
+            assertEquals(countNotNull(envelopes), sxfReader.query(sheet).size());
+            indexedReader.close();
+            sxfReader.close();
+        }
+    }
+
+    @Test
+    public void testSxfReaderFilter() throws IOException {
+        SXFReaderOptions streamingOptions = new SXFReaderOptions();
+        streamingOptions.streaming = true;
+        for (String name : new String[] {"K37007.SXF", "L37141w.SXF"}) {
+            File file = new File("src/test/resources/" + name);
+            SXFReader sxfReader = new SXFReader(file);
+            SXFReader streamingReader = new SXFReader(file, streamingOptions);
+            // Conditions by values of some records
+            SXFRecord first = sxfReader.getRecordByIncode(sxfReader.getCount() / 3);
+            SXFRecord second = sxfReader.getRecordByIncode(sxfReader.getCount() / 2);
+            int code = -1;
+            for (SXFRecord sxfRecord : sxfReader.records()) {
+                if (sxfRecord.semantics().size() > 0) {
+                    code = sxfRecord.semantics().get(0).code;
+                    break;
+                }
+            }
+            Envelope sheet = sxfReader.getPassportXY().getEnvelopeInternal();
+            Envelope quarter = new Envelope(sheet.getMinX(), sheet.centre().x, sheet.getMinY(), sheet.centre().y);
+            SXFRecordFilter[] filters = {
+                    new SXFRecordFilter(),
+                    new SXFRecordFilter().excodes(second.getExcode(), first.getExcode()),
+                    new SXFRecordFilter().local(first.getLocal(), Local.POINT).bottom(0, first.getBottom()),
+                    new SXFRecordFilter().upper(second.getUpper(), 15).semantic(code),
+                    new SXFRecordFilter().envelope(quarter).semantic(code),
+                    new SXFRecordFilter().envelope(quarter).local(Local.LINE, Local.SQUARE)
+            };
+            for (int k = 0; k < filters.length; k++) {
+                List<Long> expected = new ArrayList<>();
+                for (int i = 0; i < sxfReader.getCount(); i++) {
+                    SXFRecord sxfRecord = sxfReader.getRecordByIncode(i);
+                    boolean hasCode = false;
+                    for (SXFRecord.Semantic semantic : sxfRecord.semantics()) {
+                        hasCode |= semantic.code == code;
+                    }
+                    Envelope envelope = sxfReader.getEnvelope(i);
+                    boolean inQuarter = envelope != null && envelope.intersects(quarter);
+                    Local local = sxfRecord.getLocal();
+                    boolean accepted;
+                    switch (k) {
+                        case 1: accepted = sxfRecord.getExcode() == first.getExcode() ||
+                                sxfRecord.getExcode() == second.getExcode(); break;
+                        case 2: accepted = (local == first.getLocal() || local == Local.POINT) &&
+                                sxfRecord.getBottom() <= first.getBottom(); break;
+                        case 3: accepted = sxfRecord.getUpper() >= second.getUpper() && hasCode; break;
+                        case 4: accepted = inQuarter && hasCode; break;
+                        case 5: accepted = inQuarter && (local == Local.LINE || local == Local.SQUARE); break;
+                        default: accepted = true;
+                    }
+                    if (accepted) {
+                        expected.add(sxfRecord.getOffset());
+                    }
+                }
+                List<Long> found = new ArrayList<>();
+                for (SXFRecord sxfRecord : sxfReader.records(filters[k])) {
+                    found.add(sxfRecord.getOffset());
+                }
+                assertEquals(expected, found);
+                List<Long> streamed = new ArrayList<>();
+                for (SXFRecord sxfRecord : streamingReader.records(filters[k])) {
+                    streamed.add(sxfRecord.getOffset());
+                }
+                assertEquals(expected, streamed);
+            }
+            streamingReader.close();
+            sxfReader.close();
+        }
+    }
+
+    private static int countNotNull(Envelope[] envelopes) {
+        int count = 0;
+        for (Envelope envelope : envelopes) {
+            if (envelope != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testSxfStreamReader() throws IOException {
+        File file = new File("src/test/resources/K37007.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        // Stream gives few bytes per read
+        InputStream inputStream = new FilterInputStream(new FileInputStream(file)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 1021));
+            }
+        };
+        SXFStreamReader sxfStreamReader = new SXFStreamReader(inputStream);
+        assertEquals(sxfReader.getPassport().getNomenclature(), sxfStreamReader.getPassport().getNomenclature());
+        int incode = 0;
+        for (SXFRecord sxfRecord : sxfStreamReader.records()) {
+            assertEquals(decode(sxfReader.getRecordByIncode(incode)), decode(sxfRecord));
+            incode++;
+        }
+        assertEquals(sxfReader.getCount(), incode);
+        sxfStreamReader.close();
+
+        // Wrong identifier of record 5: stream stopped or record skipped
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int offset = (int) sxfReader.getRecordByIncode(5).getOffset();
+        bytes[offset] = 0;
+        sxfStreamReader = new SXFStreamReader(new ByteArrayInputStream(bytes));
+        incode = 0;
+        while (sxfStreamReader.next() != null) {
+            incode++;
+        }
+        assertEquals(5, incode);
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.findNext = true;
+        sxfStreamReader = new SXFStreamReader(Channels.newChannel(new ByteArrayInputStream(bytes)), sxfReaderOptions);
+        incode = 0;
+        for (SXFRecord sxfRecord : sxfStreamReader.records()) {
+            assertEquals(decode(sxfReader.getRecordByIncode(incode < 5 ? incode : incode + 1)), decode(sxfRecord));
+            incode++;
+        }
+        assertEquals(sxfReader.getCount() - 1, incode);
+        sxfReader.close();
+    }
+
+    @Test
+    public void testSxfPassportHeader() throws IOException {
+        for (String name : new String[] {"K37007.SXF", "L3710.SXF", "L37141w.SXF"}) {
+            File file = new File("src/test/resources/" + name);
+            SXFReader sxfReader = new SXFReader(file);
+            SXFPassport sxfPassport = SXFPassport.readHeader(file.toPath());
+            // Offset detected only by reader
+            sxfPassport.setDXY0(sxfReader.getPassport().getDXY0());
+            assertEquals(sxfReader.getPassport().toString(), sxfPassport.toString());
+            assertNull(sxfReader.getPassport().getDescriptor());
+            assertEquals(sxfReader.getDescriptor().getLength(), sxfPassport.getDescriptor().getLength());
+            assertEquals(sxfReader.getDescriptor().getRecordCount(), sxfPassport.getDescriptor().getRecordCount());
+            sxfReader.close();
+        }
+        File file = File.createTempFile("sxf4j", ".sxf");
+        try {
+            Files.write(file.toPath(), new byte[] {0x53, 0x58, 0x46, 0x00, 0x00});
+            SXFPassport.readHeader(file.toPath());
+            fail("Short file must be rejected");
+        } catch (IOException e) {
+            // Expected
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSxfReaderCloseOnError() throws IOException {
+        File file = File.createTempFile("sxf4j", ".sxf");
+        try {
+            Files.write(file.toPath(), new byte[1000]);
+            SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+            sxfReaderOptions.strict = true;
+            FileChannel fileChannel = new RandomAccessFile(file, "r").getChannel();
+            try {
+                new SXFReader(file, fileChannel, SXFBuffer.map(fileChannel, SXFBuffer.DEFAULT_SHIFT), sxfReaderOptions);
+                fail("Not SXF file must be rejected");
+            } catch (IOException e) {
+                // Expected
+            }
+            // Channel of failed reader closed
+            assertFalse(fileChannel.isOpen());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSxfCatalog() throws IOException {
+        File directory = Files.createTempDirectory("sxf4j").toFile();
+        File bad = new File(directory, "bad.sxf");
+        try {
+            Files.write(bad.toPath(), new byte[100]);
+            List<File> files = new ArrayList<>();
+            for (String name : new String[] {"K37007.SXF", "L3710.SXF", "L37141w.SXF"}) {
+                files.add(new File("src/test/resources/" + name));
+            }
+            files.add(bad);
+            // Bad file skipped
+            SXFCatalog sxfCatalog = new SXFCatalog(files, false);
+            assertEquals(3, sxfCatalog.size());
+            for (SXFCatalog.Sheet sheet : sxfCatalog.getSheets()) {
+                SXFReader sxfReader = sheet.open(new SXFReaderOptions());
+                assertEquals(sxfReader.getPassport().getNomenclature(), sheet.getNomenclature());
+                assertEquals(sxfReader.getPassport().srid(), sheet.getSrid());
+                assertEquals(sxfReader.getDescriptor().getRecordCount(), sheet.getRecordCount());
+                assertEquals(sxfReader.getPassportXY().getEnvelopeInternal(), sheet.getEnvelope());
+                assertEquals(sxfReader.getPassportBL().getEnvelopeInternal(), sheet.getEnvelopeBL());
+                assertSame(sheet, sxfCatalog.getSheet(sheet.getNomenclature()));
+                assertTrue(sxfCatalog.getSheetsByScale(sheet.getScale()).contains(sheet));
+                sxfReader.close();
+
+                Envelope envelope = sheet.getEnvelope();
+                Envelope corner = new Envelope(envelope.getMinX(), envelope.getMinX() + 1, envelope.getMinY(), envelope.getMinY() + 1);
+                assertTrue(sxfCatalog.query(corner).contains(sheet));
+                assertTrue(sxfCatalog.query(corner, sheet.getSrid()).contains(sheet));
+                assertFalse(sxfCatalog.query(corner, sheet.getSrid() + 1).contains(sheet));
+                assertTrue(sxfCatalog.queryBL(sheet.getEnvelopeBL()).contains(sheet));
+            }
+            assertTrue(sxfCatalog.queryBL(new Envelope(-180, -179, -90, -89)).isEmpty());
+
+            // Directory search
+            Files.copy(files.get(0).toPath(), new File(directory, "K37007.sxf").toPath());
+            assertEquals(1, new SXFCatalog(directory).size());
+
+            try {
+                new SXFCatalog(files, true);
+                fail("Bad file must be rejected in strict mode");
+            } catch (IOException e) {
+                // Expected
+            }
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testSxfReaderCache() throws Exception {
+        final File[] files = {new File("src/test/resources/K37007.SXF"), new File("src/test/resources/L3710.SXF"),
+                new File("src/test/resources/L37141w.SXF")};
+        // Cache unmaps evicted readers without change of options
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+
+        // Two first files not fit into limit
+        SXFReaderCache sxfReaderCache = new SXFReaderCache(files[0].length() + files[1].length() - 1, Long.MAX_VALUE,
+                sxfReaderOptions);
+        SXFReaderCache.Handle first = sxfReaderCache.acquire(files[0]);
+        SXFReaderCache.Handle second = sxfReaderCache.acquire(files[0]);
+        assertSame(first.getReader(), second.getReader());
+        assertEquals(1, sxfReaderCache.getMissCount());
+        assertEquals(1, sxfReaderCache.getHitCount());
+        assertEquals(files[0].length(), sxfReaderCache.getMappedSize());
+        // Readers in use not evicted
+        SXFReaderCache.Handle other = sxfReaderCache.acquire(files[1]);
+        assertEquals(2, sxfReaderCache.size());
+        assertEquals(0, sxfReaderCache.getEvictionCount());
+        first.close();
+        first.close();
+        assertEquals(2, sxfReaderCache.size());
+        second.close();
+        assertEquals(1, sxfReaderCache.size());
+        assertEquals(1, sxfReaderCache.getEvictionCount());
+        assertEquals(files[1].length(), sxfReaderCache.getMappedSize());
+        assertTrue(other.getReader().getCount() > 0);
+        other.close();
+        sxfReaderCache.close();
+        assertEquals(0, sxfReaderCache.size());
+        assertEquals(0, sxfReaderCache.getMappedSize());
+        assertEquals(0, sxfReaderCache.getHeapSize());
+        assertFalse(sxfReaderOptions.unmapOnClose);
+        try {
+            sxfReaderCache.acquire(files[0]);
+            fail("Closed cache must not be used");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        // File which can not be opened is not kept
+        SXFReaderCache failedCache = new SXFReaderCache(Long.MAX_VALUE, Long.MAX_VALUE, sxfReaderOptions);
+        for (int i = 0; i < 2; i++) {
+            try {
+                failedCache.acquire(new File("src/test/resources/missing.sxf"));
+                fail("Missing file must be rejected");
+            } catch (IOException e) {
+                // Expected
+            }
+            assertEquals(0, failedCache.size());
+        }
+        assertEquals(2, failedCache.getMissCount());
+        failedCache.close();
+
+        // Concurrent use, heap of readers limited
+        final SXFReaderCache concurrentCache = new SXFReaderCache(Long.MAX_VALUE, 1, sxfReaderOptions);
+        final String[] expected = new String[files.length];
+        for (int i = 0; i < files.length; i++) {
+            SXFReader sxfReader = new SXFReader(files[i]);
+            expected[i] = decode(sxfReader.getRecordByIncode(sxfReader.getCount() / 2));
+            sxfReader.close();
+        }
+        final AtomicInteger mismatches = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int shift = t;
+            futures.add(executorService.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int k = 0; k < 50; k++) {
+                        int i = (k + shift) % files.length;
+                        try (SXFReaderCache.Handle handle = concurrentCache.acquire(files[i])) {
+                            SXFReader sxfReader = handle.getReader();
+                            if (!expected[i].equals(decode(sxfReader.getRecordByIncode(sxfReader.getCount() / 2)))) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+        assertEquals(0, mismatches.get());
+        assertEquals(200, concurrentCache.getHitCount() + concurrentCache.getMissCount());
+        // All readers not in use are over limit
+        assertEquals(0, concurrentCache.size());
+        assertEquals(0, concurrentCache.getMappedSize());
+        concurrentCache.close();
+    }
+
+    @Test
+    public void testSxfReaderCacheEvicted() throws IOException {
+        File file = new File("src/test/resources/L37141w.SXF");
+        SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+        sxfReaderOptions.coordinateSequenceFactory = SXFCoordinateSequenceFactory.instance();
+        // Reader evicted on close of handle
+        SXFReaderCache sxfReaderCache = new SXFReaderCache(0, Long.MAX_VALUE, sxfReaderOptions);
+        SXFReaderCache.Handle handle = sxfReaderCache.acquire(file);
+        SXFReader sxfReader = handle.getReader();
+        Geometry geometry = sxfReader.getRecordByIncode(0).geometry();
+        assertTrue(geometry.getCoordinates().length > 0);
+        handle.close();
+        assertEquals(1, sxfReaderCache.getEvictionCount());
+        try {
+            handle.getReader();
+            fail("Reader of closed handle must not be available");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            sxfReader.getRecordByIncode(0).geometry();
+            fail("Evicted reader must not be read");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        try {
+            geometry.getCoordinates();
+            fail("Geometry over unmapped file must not be read");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        sxfReaderCache.close();
+    }
+
+    @Test
+    public void testSxfArchive() throws IOException {
+        File k37007 = new File("src/test/resources/K37007.SXF");
+        File l3710 = new File("src/test/resources/L3710.SXF");
+        File zip = File.createTempFile("sxf4j", ".zip");
+        File gz = File.createTempFile("sxf4j", ".sxf.gz");
+        try {
+            byte[] bytes = Files.readAllBytes(k37007.toPath());
+            try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zip))) {
+                zipOutputStream.putNextEntry(new ZipEntry("sheets/"));
+                ZipEntry stored = new ZipEntry("sheets/K37007.SXF");
+                stored.setMethod(ZipEntry.STORED);
+                stored.setSize(bytes.length);
+                CRC32 crc32 = new CRC32();
+                crc32.update(bytes);
+                stored.setCrc(crc32.getValue());
+                zipOutputStream.putNextEntry(stored);
+                zipOutputStream.write(bytes);
+                zipOutputStream.putNextEntry(new ZipEntry("L3710.SXF"));
+                zipOutputStream.write(Files.readAllBytes(l3710.toPath()));
+            }
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(new FileOutputStream(gz))) {
+                gzipOutputStream.write(bytes);
+            }
+
+            try (SXFArchive sxfArchive = new SXFArchive(zip)) {
+                List<SXFArchive.Entry> entries = sxfArchive.getEntries();
+                assertEquals(2, entries.size());
+                assertEquals("sheets/K37007.SXF", entries.get(0).getName());
+                assertTrue(entries.get(0).isStored());
+                assertFalse(entries.get(1).isStored());
+                assertSameRecords(k37007, entries.get(0));
+                assertSameRecords(l3710, entries.get(1));
+                // Deflated entry read as stream
+                try (SXFReader sxfReader = new SXFReader(l3710);
+                     SXFStreamReader sxfStreamReader = entries.get(1).openStream(new SXFReaderOptions())) {
+                    int count = 0;
+                    while (sxfStreamReader.next() != null) {
+                        count++;
+                    }
+                    assertEquals(sxfReader.getCount(), count);
+                }
+            }
+            try (SXFArchive sxfArchive = new SXFArchive(gz)) {
+                assertEquals(1, sxfArchive.getEntries().size());
+                assertSameRecords(k37007, sxfArchive.getEntries().get(0));
+            }
+        } finally {
+            zip.delete();
+            gz.delete();
+        }
+    }
+
+    private static void assertSameRecords(File file, SXFArchive.Entry entry) throws IOException {
+        try (SXFReader sxfReader = new SXFReader(file);
+             SXFReader entryReader = entry.openReader(new SXFReaderOptions())) {
+            assertEquals(sxfReader.getCount(), entryReader.getCount());
+            for (int i = 0; i < sxfReader.getCount(); i++) {
+                assertEquals(decode(sxfReader.getRecordByIncode(i)), decode(entryReader.getRecordByIncode(i)));
+            }
+        }
+    }
+
+    private static String decode(SXFRecord sxfRecord) throws IOException {
+        StringBuilder stringBuilder = new StringBuilder(sxfRecord.geometry().toText());
+        for (SXFRecord.Text text : sxfRecord.texts()) {
+            stringBuilder.append('|').append(text.getText());
+        }
+        for (SXFRecord.Semantic semantic : sxfRecord.semantics()) {
+            stringBuilder.append('|').append(semantic.code).append('=').append(semantic.getString());
+        }
+        return stringBuilder.toString();
+    }
 }
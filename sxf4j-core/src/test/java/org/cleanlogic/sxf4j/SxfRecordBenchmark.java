@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 iserge.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.cleanlogic.sxf4j;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Benchmark of decode of record geometries, not run by tests. Each sheet decoded in one segment and
+ * in small segments (records across segments are copied before decode).
+ * Run: java -cp test-classes:classes:... org.cleanlogic.sxf4j.SxfRecordBenchmark [files...]
+ * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
+ */
+public class SxfRecordBenchmark {
+    private static final int ROUNDS = 20;
+
+    public static void main(String args[]) throws IOException {
+        String[] names = args.length > 0 ? args : new String[] {"src/test/resources/K37007.SXF",
+                "src/test/resources/L3710.SXF", "src/test/resources/L37141w.SXF"};
+        for (String name : names) {
+            for (int segmentShift : new int[] {SXFBuffer.DEFAULT_SHIFT, 12}) {
+                SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+                sxfReaderOptions.segmentShift = segmentShift;
+                SXFReader sxfReader = new SXFReader(new File(name), sxfReaderOptions);
+                long points = 0;
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    points = 0;
+                    for (SXFRecord sxfRecord : sxfReader.records()) {
+                        points += sxfRecord.geometry().getNumPoints();
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                sxfReader.close();
+                System.out.println(String.format("%s, segment 2^%d: %d records, %d points, %.2f ms, %.1f Mpoints/s",
+                        name, segmentShift, sxfReader.getCount(), points, best / 1e6, points * 1e3 / best));
+            }
+        }
+    }
+}
@@ -16,16 +16,26 @@
 
 package org.cleanlogic.sxf4j;
 
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.MultiPolygon;
 import com.vividsolutions.jts.geom.Polygon;
 import junit.framework.TestCase;
 import junit.textui.TestRunner;
 import org.cleanlogic.sxf4j.enums.Local;
+import org.cleanlogic.sxf4j.enums.SemanticType;
+import org.cleanlogic.sxf4j.utils.Utils;
 import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 
@@ -81,6 +91,291 @@ public class SxfRecordTest extends TestCase {
         sxfReader.close();
     }
 
+    @Test
+    public void testReadSemanticByCode() throws IOException {
+        for (String name : new String[] {"K37007.SXF", "L37141w.SXF"}) {
+            File file = new File("src/test/resources/" + name);
+            SXFReader sxfReader = new SXFReader(file);
+            for (SXFRecord sxfRecord : sxfReader.records()) {
+                List<SXFRecord.Semantic> semantics = sxfRecord.semantics();
+                for (SXFRecord.Semantic semantic : semantics) {
+                    SXFRecord.Semantic expected = null;
+                    for (SXFRecord.Semantic first : semantics) {
+                        if (first.code == semantic.code) {
+                            expected = first;
+                            break;
+                        }
+                    }
+                    SXFRecord.Semantic found = sxfRecord.semantic(semantic.code);
+                    assertNotNull(found);
+                    assertEquals(expected.type, found.type);
+                    assertEquals(expected.scale, found.scale);
+                    assertEquals(expected.getString(), found.getString());
+                    assertEquals(found.getString(), found.getValue());
+                    double value = sxfRecord.semanticDouble(semantic.code);
+                    if (semantic.type == SemanticType.CHAR || semantic.type == SemanticType.SHORT ||
+                            semantic.type == SemanticType.LONG || semantic.type == SemanticType.DOUBLE) {
+                        assertEquals(Double.parseDouble(expected.getString()), value);
+                        assertTrue(found.isNumber());
+                        assertEquals(value, found.getDouble());
+                        assertEquals((long) value, found.getLong());
+                    }
+                }
+                assertNull(sxfRecord.semantic(65535));
+                assertTrue(Double.isNaN(sxfRecord.semanticDouble(65535)));
+            }
+            sxfReader.close();
+        }
+    }
+
+    @Test
+    public void testReadSameStrings() throws IOException {
+        File file = new File("src/test/resources/K37007.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        for (int incode = 0; incode < sxfReader.getCount(); incode++) {
+            // Records are new objects, strings taken from table of reader
+            List<SXFRecord.Semantic> semantics = sxfReader.getRecordByIncode(incode).semantics();
+            for (SXFRecord.Semantic semantic : semantics) {
+                if (!semantic.isNumber()) {
+                    assertSame(semantic.getString(), sxfReader.getRecordByIncode(incode).semantic(semantic.code).getString());
+                }
+            }
+            List<SXFRecord.Text> texts = sxfReader.getRecordByIncode(incode).texts();
+            List<SXFRecord.Text> again = sxfReader.getRecordByIncode(incode).texts();
+            for (int i = 0; i < texts.size(); i++) {
+                assertSame(texts.get(i).getText(), again.get(i).getText());
+            }
+        }
+        sxfReader.close();
+    }
+
+    @Test
+    public void testReadTextsWithoutGeometry() throws IOException {
+        for (String name : new String[] {"K37007.SXF", "L37141w.SXF"}) {
+            File file = new File("src/test/resources/" + name);
+            SXFReader sxfReader = new SXFReader(file);
+            for (SXFRecord sxfRecord : sxfReader.records()) {
+                List<SXFRecord.Text> texts = sxfRecord.texts();
+                if (sxfRecord.isTextExsits()) {
+                    assertEquals(sxfRecord.getSubrecordCount() + 1, texts.size());
+                } else {
+                    assertEquals(0, texts.size());
+                }
+                // Texts kept after geometry
+                assertNotNull(sxfRecord.geometry());
+                assertSame(texts, sxfRecord.texts());
+            }
+            sxfReader.close();
+        }
+        File file = new File("src/test/resources/K37007.SXF");
+        SXFReader sxfReader = new SXFReader(file);
+        String textStr = "";
+        for (SXFRecord.Text text : sxfReader.getRecordByNumber(648).texts()) {
+            textStr += text.getText();
+        }
+        sxfReader.close();
+        assertEquals("ЧЕРНОЕ МОРЕ", textStr);
+    }
+
+    @Test
+    public void testReadGraphic() throws IOException {
+        File file = new File("src/test/resources/K37007.SXF");
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        SXFReader sxfReader = new SXFReader(file);
+        SXFRecord source = null;
+        for (SXFRecord sxfRecord : sxfReader.records()) {
+            if (sxfRecord.semantics().size() > 1 && sxfRecord.getSubrecordCount() > 0) {
+                source = sxfRecord;
+                break;
+            }
+        }
+        assertNotNull(source);
+        assertNull(source.graphic());
+        // Same record with graphic description of two primitives at end of metric
+        int offset = (int) source.getOffset();
+        int metricLength = ByteBuffer.wrap(bytes, offset + 8, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        ByteBuffer graphic = ByteBuffer.allocate(12 + 8 + 6).order(ByteOrder.LITTLE_ENDIAN);
+        graphic.putInt(SXFRecord.GRAPHIC_IDENTIFIER).putInt(graphic.capacity()).putInt(2);
+        graphic.putShort((short) 8).putShort((short) 147).putInt(0x00FF00FF);
+        graphic.putShort((short) 6).putShort((short) 128).putShort((short) 250);
+        ByteBuffer buffer = ByteBuffer.allocate(source.getLength() + graphic.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(bytes, offset, 32 + metricLength).put(graphic.array());
+        buffer.put(bytes, offset + 32 + metricLength, source.getLength() - 32 - metricLength);
+        buffer.putInt(4, buffer.capacity());
+        buffer.putInt(8, metricLength + graphic.capacity());
+        buffer.put(22, (byte) (buffer.get(22) | 0x10));
+        buffer.clear();
+
+        SXFRecord sxfRecord = new SXFRecord(sxfReader.getPassport(), new GeometryFactory());
+        sxfRecord.read(SXFBuffer.wrap(buffer), 0, true);
+        assertTrue(sxfRecord.isGraphicExists());
+        assertEquals(source.geometry(), sxfRecord.geometry());
+        assertEquals(source.semantics().size(), sxfRecord.semantics().size());
+        for (int i = 0; i < source.semantics().size(); i++) {
+            assertEquals(source.semantics().get(i).code, sxfRecord.semantics().get(i).code);
+            assertEquals(source.semantics().get(i).getString(), sxfRecord.semantics().get(i).getString());
+        }
+        List<SXFRecord.Primitive> primitives = sxfRecord.graphic().getPrimitives();
+        assertEquals(2, primitives.size());
+        assertEquals(147, primitives.get(0).getNumber());
+        assertEquals(4, primitives.get(0).getParameters().length);
+        assertEquals(128, primitives.get(1).getNumber());
+        assertEquals((byte) 250, primitives.get(1).getParameters()[0]);
+        assertSame(sxfRecord.graphic(), sxfRecord.graphic());
+        // Semantic lookup not affected by graphic
+        int code = source.semantics().get(1).code;
+        assertEquals(source.semantic(code).getString(), sxfRecord.semantic(code).getString());
+
+        // Wrong identifier of description
+        buffer.putInt(32 + metricLength, 0);
+        sxfRecord.read(SXFBuffer.wrap(buffer), 0, true);
+        try {
+            sxfRecord.graphic();
+            fail("Wrong graphic description must be rejected");
+        } catch (IOException e) {
+            // Expected
+        }
+        assertEquals(source.semantics().size(), sxfRecord.semantics().size());
+        sxfReader.close();
+    }
+
+    @Test
+    public void testReadCoordinatesAcrossSegments() throws IOException {
+        SXFReader sxfReader = new SXFReader(new File("src/test/resources/K37007.SXF"));
+        SXFPassport sxfPassport = sxfReader.getPassport();
+        sxfReader.close();
+        File file = File.createTempFile("sxf4j", ".sxf");
+        int count = 37;
+        // Element size flag, float flag and size of element: short, float, int, double
+        int[][] formats = {{0, 0, 2}, {0, 1, 4}, {1, 0, 4}, {1, 1, 8}};
+        try {
+            for (int[] format : formats) {
+                int elementSize = format[2];
+                for (boolean is3D : new boolean[] {false, true}) {
+                    int heightSize = elementSize == 8 ? 8 : 4;
+                    int pointSize = elementSize * 2 + (is3D ? heightSize : 0);
+                    int metricLength = count * pointSize;
+                    ByteBuffer record = ByteBuffer.allocate(32 + metricLength).order(ByteOrder.LITTLE_ENDIAN);
+                    record.putInt(SXFRecord.IDENTIFIER).putInt(record.capacity()).putInt(metricLength);
+                    record.putInt(1).putInt(1).put((byte) Local.LINE.ordinal()).put((byte) (format[0] << 2));
+                    record.put((byte) ((is3D ? 0x2 : 0) | format[1] << 2)).put((byte) 0);
+                    record.putInt(0).putInt(count << 16);
+                    for (int i = 0; i < count; i++) {
+                        int x = 1000 + i * 7;
+                        int y = 2000 - i * 3;
+                        switch (format[0] << 1 | format[1]) {
+                            case 0:
+                                record.putShort((short) x).putShort((short) y);
+                                break;
+                            case 1:
+                                record.putFloat(x).putFloat(y);
+                                break;
+                            case 2:
+                                record.putInt(x).putInt(y);
+                                break;
+                            default:
+                                record.putDouble(x).putDouble(y);
+                                break;
+                        }
+                        if (is3D && heightSize == 8) {
+                            record.putDouble(10 + i);
+                        } else if (is3D) {
+                            record.putFloat(10 + i);
+                        }
+                    }
+                    record.clear();
+                    SXFRecord expected = new SXFRecord(sxfPassport, new GeometryFactory());
+                    expected.read(SXFBuffer.wrap(record), 0, true);
+                    Coordinate[] coordinates = expected.geometry().getCoordinates();
+                    assertEquals(count, coordinates.length);
+                    // Second value of point is x, first is y
+                    double[] raw = new double[count * 3];
+                    for (int i = 0; i < count; i++) {
+                        raw[i * 3] = 2000 - i * 3;
+                        raw[i * 3 + 1] = 1000 + i * 7;
+                    }
+                    if (sxfPassport.isDescrets()) {
+                        sxfPassport.descretsToMetres(raw, 0, raw.length);
+                    }
+                    for (int i = 0; i < count; i++) {
+                        assertEquals(raw[i * 3], coordinates[i].x, 1e-6);
+                        assertEquals(raw[i * 3 + 1], coordinates[i].y, 1e-6);
+                        if (is3D) {
+                            assertEquals(10. + i, coordinates[i].z);
+                        }
+                    }
+                    // Segments of 32 bytes, record moved so borders fall on each byte of point
+                    for (int padding = 0; padding < pointSize; padding++) {
+                        byte[] bytes = new byte[padding + record.capacity()];
+                        System.arraycopy(record.array(), 0, bytes, padding, record.capacity());
+                        Files.write(file.toPath(), bytes);
+                        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+                            SXFBuffer buffer = SXFBuffer.map(randomAccessFile.getChannel(), 5);
+                            SXFRecord sxfRecord = new SXFRecord(sxfPassport, new GeometryFactory());
+                            sxfRecord.read(buffer, padding, true);
+                            Coordinate[] actual = sxfRecord.geometry().getCoordinates();
+                            assertEquals(coordinates.length, actual.length);
+                            for (int i = 0; i < coordinates.length; i++) {
+                                assertTrue(coordinates[i].equals3D(actual[i]));
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testVisitCoordinates() throws IOException {
+        for (String name : new String[] {"K37007.SXF", "L3710.SXF", "L37141w.SXF"}) {
+            File file = new File("src/test/resources/" + name);
+            SXFReader sxfReader = new SXFReader(file);
+            for (int incode = 0; incode < sxfReader.getCount(); incode++) {
+                // Streamed EWKB is same as EWKB of geometry
+                StringBuilder wkb = new StringBuilder();
+                SXFWkbWriter.write(sxfReader.getRecordByIncode(incode), wkb);
+                SXFRecord sxfRecord = sxfReader.getRecordByIncode(incode);
+                Geometry geometry = sxfRecord.geometry();
+                assertEquals(Utils.geometryAsWKB(geometry), wkb.toString());
+                if (sxfRecord.getLocal() != Local.LINE) {
+                    continue;
+                }
+                // Small chunks give same points as lines of geometry
+                final List<Coordinate> coordinates = new ArrayList<>();
+                final List<Integer> counts = new ArrayList<>();
+                sxfRecord.visitCoordinates(new SXFCoordinateVisitor() {
+                    @Override
+                    public void part(int part, int pointCount) {
+                        assertEquals(counts.size(), part);
+                        counts.add(pointCount);
+                    }
+
+                    @Override
+                    public void coordinates(double[] chunk, int count) {
+                        assertTrue(count <= 7);
+                        for (int i = 0; i < count; i++) {
+                            coordinates.add(new Coordinate(chunk[i * 3], chunk[i * 3 + 1], chunk[i * 3 + 2]));
+                        }
+                    }
+                }, 7);
+                assertEquals(geometry.getNumGeometries(), counts.size());
+                List<Coordinate> expected = new ArrayList<>();
+                for (int i = 0; i < counts.size(); i++) {
+                    // Line of one point is completed by geometry
+                    Coordinate[] line = geometry.getGeometryN(i).getCoordinates();
+                    expected.addAll(Arrays.asList(line).subList(0, counts.get(i)));
+                }
+                assertEquals(expected.size(), coordinates.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertTrue(expected.get(i).equals3D(coordinates.get(i)));
+                }
+            }
+            sxfReader.close();
+        }
+    }
+
     @Test
     public void testReadLineRecord() throws IOException {
         readRecord(1225, 21200000, Local.LINE, 2383, 0);
@@ -19,9 +19,12 @@ package org.cleanlogic.sxf4j.utils;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import org.apache.commons.cli.*;
+import org.cleanlogic.sxf4j.SXFArchive;
 import org.cleanlogic.sxf4j.SXFPassport;
 import org.cleanlogic.sxf4j.SXFReader;
+import org.cleanlogic.sxf4j.SXFReaderOptions;
 import org.cleanlogic.sxf4j.SXFRecord;
+import org.cleanlogic.sxf4j.SXFWkbWriter;
 import org.cleanlogic.sxf4j.enums.Local;
 import org.osgeo.proj4j.*;
 import org.osgeo.proj4j.io.Proj4FileReader;
@@ -29,9 +32,7 @@ import org.osgeo.proj4j.io.Proj4FileReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * @author Serge Silaev aka iSergio <s.serge.b@gmail.com>
@@ -154,7 +155,7 @@ public class Sxf2Pgsql {
                 if (file.isFile()) {
                     files.add(file);
                 } else if (file.isDirectory()) {
-                    Utils.search(file, files, ".sxf");
+                    Utils.search(file, files, ".sxf", ".zip", ".sxf.gz");
                 }
             }
             boolean useNomenclature = true;
@@ -189,63 +190,32 @@ public class Sxf2Pgsql {
                 System.out.print(createTables());
             }
 
+            SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+            sxfReaderOptions.strict = true;
+            sxfReaderOptions.findNext = true;
             for (File file : files) {
-                try {
-                    SXFReader sxfReader = new SXFReader(file, true, true);
-                    SXFPassport sxfPassport = sxfReader.getPassport();
-                    int srid = sxfPassport.srid();
-                    //
-                    if (!Utils.SRID_EX.containsKey(srid)) {
-                        Proj4FileReader proj4FileReader = new Proj4FileReader();
-                        String params[] = proj4FileReader.readParametersFromFile("EPSG", String.valueOf(srid));
-                        if (params == null || params.length == 0) {
-                            // Wrong srid. Force from passport.
-                            srid = sxfPassport.srid(true);
-                        }
-                    }
-                    //
-                    if (srid != 0) {
-                        sxf2PgsqlOptions.srcSRID = srid;
-                    }
-                    if (!commandLine.hasOption("t")) {
-                        if (sxf2PgsqlOptions.srcSRID != sxf2PgsqlOptions.dstSRID && sxf2PgsqlOptions.dstSRID != 0) {
-                            coordinateTransform = createCoordinateTransform();
-                        }
-                    }
-                    // Each file in separate transaction
-                    if (useNomenclature) {
-                        sxf2PgsqlOptions.tableName = sxfPassport.getNomenclature();
-                        if (sxf2PgsqlOptions.dropTable) {
-                            System.out.print(dropTables());
-                        }
-                        if (sxf2PgsqlOptions.transaction) {
-                            System.out.println("BEGIN;");
-                        }
-                        System.out.print(createTables());
+                if (!SXFArchive.isArchive(file)) {
+                    try (SXFReader sxfReader = new SXFReader(file, sxfReaderOptions)) {
+                        process(sxfReader, commandLine, useNomenclature);
+                    } catch (IOException e) {
+                        e.printStackTrace();
                     }
-                    if (!sxf2PgsqlOptions.pgdumpFormat) {
-                        for (int i = 0; i < sxfReader.getCount(); i++) {
-                            SXFRecord sxfRecord = sxfReader.getRecordByIncode(i);
-                            if (sxfRecord.getLocal() != null) {
-                                System.out.print(createInsert(sxfRecord));
-                            }
+                    continue;
+                }
+                // Sheets read from archive without unpack
+                try (SXFArchive sxfArchive = new SXFArchive(file)) {
+                    for (SXFArchive.Entry entry : sxfArchive.getEntries()) {
+                        if (!entry.getName().toLowerCase().endsWith(".sxf")) {
+                            continue;
                         }
-                    } else {
-                        createCopy(sxfReader);
-                    }
-                    if (useNomenclature) {
-                        if (sxf2PgsqlOptions.spatialIndex) {
-                            for (Local local : Local.values()) {
-                                System.out.print(createIndex(local));
-                            }
+                        try (SXFReader sxfReader = entry.openReader(sxfReaderOptions)) {
+                            process(sxfReader, commandLine, useNomenclature);
+                        } catch (IOException e) {
+                            e.printStackTrace();
                         }
-                        System.out.println("END;");
                     }
-                    coordinateTransform = null;
                 } catch (IOException e) {
                     e.printStackTrace();
-                } finally {
-                    coordinateTransform = null;
                 }
             }
             if (!useNomenclature) {
@@ -266,6 +236,68 @@ public class Sxf2Pgsql {
         }
     }
 
+    /**
+     * Print SQL of one sheet.
+     * @param sxfReader reader of sheet.
+     * @param commandLine command line.
+     * @param useNomenclature name tables by nomenclature of sheet.
+     * @throws IOException exception if wrong.
+     */
+    private static void process(SXFReader sxfReader, CommandLine commandLine, boolean useNomenclature) throws IOException {
+        try {
+            SXFPassport sxfPassport = sxfReader.getPassport();
+            int srid = sxfPassport.srid();
+            //
+            if (!Utils.SRID_EX.containsKey(srid)) {
+                Proj4FileReader proj4FileReader = new Proj4FileReader();
+                String params[] = proj4FileReader.readParametersFromFile("EPSG", String.valueOf(srid));
+                if (params == null || params.length == 0) {
+                    // Wrong srid. Force from passport.
+                    srid = sxfPassport.srid(true);
+                }
+            }
+            //
+            if (srid != 0) {
+                sxf2PgsqlOptions.srcSRID = srid;
+            }
+            if (!commandLine.hasOption("t")) {
+                if (sxf2PgsqlOptions.srcSRID != sxf2PgsqlOptions.dstSRID && sxf2PgsqlOptions.dstSRID != 0) {
+                    coordinateTransform = createCoordinateTransform();
+                }
+            }
+            // Each file in separate transaction
+            if (useNomenclature) {
+                sxf2PgsqlOptions.tableName = sxfPassport.getNomenclature();
+                if (sxf2PgsqlOptions.dropTable) {
+                    System.out.print(dropTables());
+                }
+                if (sxf2PgsqlOptions.transaction) {
+                    System.out.println("BEGIN;");
+                }
+                System.out.print(createTables());
+            }
+            if (!sxf2PgsqlOptions.pgdumpFormat) {
+                for (int i = 0; i < sxfReader.getCount(); i++) {
+                    if (sxfReader.getLocal(i) != null) {
+                        System.out.print(createInsert(sxfReader.getRecordByIncode(i)));
+                    }
+                }
+            } else {
+                createCopy(sxfReader);
+            }
+            if (useNomenclature) {
+                if (sxf2PgsqlOptions.spatialIndex) {
+                    for (Local local : Local.values()) {
+                        System.out.print(createIndex(local));
+                    }
+                }
+                System.out.println("END;");
+            }
+        } finally {
+            coordinateTransform = null;
+        }
+    }
+
     private static String dropTables() {
         StringBuilder stringBuilder = new StringBuilder();
         for (Local local : Local.values()) {
@@ -307,24 +339,17 @@ public class Sxf2Pgsql {
     }
 
     private static void createCopy(SXFReader sxfReader) throws IOException {
-        // Prepare copy by locals
-        Map<Local, List<SXFRecord>> preparedSXFRecords = new HashMap<>();
-        for (int i = 0; i < sxfReader.getCount(); i++) {
-            SXFRecord sxfRecord = sxfReader.getRecordByIncode(i);
-            Local local = sxfRecord.getLocal();
-            if (!preparedSXFRecords.containsKey(local)) {
-                preparedSXFRecords.put(local, new ArrayList<SXFRecord>());
-            }
-            preparedSXFRecords.get(local).add(sxfRecord);
-        }
-        // Done prepare copy
-
         String schemaName = sxf2PgsqlOptions.schemaName;
         for (Local local : Local.values()) {
-            if (local == null) {
-                continue;
+            // Records by locals, taken from reader header index
+            int first = -1;
+            for (int i = 0; i < sxfReader.getCount(); i++) {
+                if (sxfReader.getLocal(i) == local) {
+                    first = i;
+                    break;
+                }
             }
-            if (preparedSXFRecords.get(local) == null) {
+            if (first < 0) {
                 continue;
             }
             String tableName = String.format("%s_%s", sxf2PgsqlOptions.tableName, local);
@@ -332,13 +357,34 @@ public class Sxf2Pgsql {
                     schemaName,
                     tableName,
                     sxf2PgsqlOptions.geocolumnName);
-            for (SXFRecord sxfRecord : preparedSXFRecords.get(local)) {
-                System.out.printf("%s", createCopy(sxfRecord));
+            for (int i = first; i < sxfReader.getCount(); i++) {
+                if (sxfReader.getLocal(i) == local) {
+                    writeCopy(sxfReader.getRecordByIncode(i));
+                }
             }
             System.out.printf("\\.\n");
         }
     }
 
+    /**
+     * Write COPY row of record. Without transform geometry streamed from metric, see {@link SXFWkbWriter}.
+     * @param sxfRecord record.
+     * @throws IOException exception if wrong.
+     */
+    private static void writeCopy(SXFRecord sxfRecord) throws IOException {
+        if (coordinateTransform != null) {
+            System.out.printf("%s", createCopy(sxfRecord));
+            return;
+        }
+        System.out.printf("%d\t%d\t%s\t%s\t",
+                sxfRecord.getExcode(),
+                sxfRecord.getNumber(),
+                textsToString(sxfRecord.texts(), true),
+                semanticsToPgArray(sxfRecord.semantics(), true));
+        SXFWkbWriter.write(sxfRecord, System.out);
+        System.out.print('\n');
+    }
+
     private static String createCopy(SXFRecord sxfRecord) throws IOException {
         Geometry geometry = sxfRecord.geometry();
         if (coordinateTransform != null) {
@@ -483,21 +529,22 @@ public class Sxf2Pgsql {
                 stringBuilder.append(",");
             }
 
+            String value = semantic.getString();
             if (!copy) {
-                semantic.value = semantic.value.replace("\\", "\\\\\\");
-                semantic.value = semantic.value.replace("\n", "\\\\n");
-                semantic.value = semantic.value.replace("\r", "\\\\r");
-                semantic.value = semantic.value.replace("\t", "\\\\t");
-                semantic.value = semantic.value.replace("\"", "\\\"");
-                semantic.value = semantic.value.replace("'", "''");
+                value = value.replace("\\", "\\\\\\");
+                value = value.replace("\n", "\\\\n");
+                value = value.replace("\r", "\\\\r");
+                value = value.replace("\t", "\\\\t");
+                value = value.replace("\"", "\\\"");
+                value = value.replace("'", "''");
             } else {
-                semantic.value = semantic.value.replace("\\", "\\\\\\\\");
-                semantic.value = semantic.value.replace("\n", "\\\\\\n");
-                semantic.value = semantic.value.replace("\r", "\\\\\\r");
-                semantic.value = semantic.value.replace("\t", "\\\\\\t");
-                semantic.value = semantic.value.replace("\"", "\\\\\"");
+                value = value.replace("\\", "\\\\\\\\");
+                value = value.replace("\n", "\\\\\\n");
+                value = value.replace("\r", "\\\\\\r");
+                value = value.replace("\t", "\\\\\\t");
+                value = value.replace("\"", "\\\\\"");
             }
-            stringBuilder.append(String.format("{\"%s\",\"%s\"}", semantic.code, semantic.value));
+            stringBuilder.append(String.format("{\"%s\",\"%s\"}", semantic.code, value));
         }
         stringBuilder.append("}");
         return stringBuilder.toString();
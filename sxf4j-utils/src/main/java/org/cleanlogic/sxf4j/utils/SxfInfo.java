@@ -19,8 +19,11 @@ package org.cleanlogic.sxf4j.utils;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Geometry;
 import org.apache.commons.cli.*;
+import org.cleanlogic.sxf4j.SXFArchive;
+import org.cleanlogic.sxf4j.SXFDescriptor;
 import org.cleanlogic.sxf4j.SXFPassport;
 import org.cleanlogic.sxf4j.SXFReader;
+import org.cleanlogic.sxf4j.SXFReaderOptions;
 import org.cleanlogic.sxf4j.SXFRecord;
 import org.osgeo.proj4j.*;
 import org.osgeo.proj4j.io.Proj4FileReader;
@@ -53,6 +56,9 @@ public class SxfInfo {
         Option recordCountOption = new Option("c", "count", false, "Print record count");
         options.addOption(recordCountOption);
 
+        Option verifyOption = new Option("v", "verify", false, "Verify checksum of SXF");
+        options.addOption(verifyOption);
+
         Option fileOption = new Option("f", "flipCoordinates", false, "Flip coordinates");
         options.addOption(fileOption);
 
@@ -98,7 +104,7 @@ public class SxfInfo {
                     System.out.println("Record info print not supported on directory mode");
                     return;
                 }
-                Utils.search(file, files, ".sxf");
+                Utils.search(file, files, ".sxf", ".zip", ".sxf.gz");
             }
 
 //            SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
@@ -129,114 +135,49 @@ public class SxfInfo {
                 }
             }
 
+            SXFReaderOptions sxfReaderOptions = new SXFReaderOptions();
+            sxfReaderOptions.strict = true;
+            sxfReaderOptions.findNext = true;
+            // Only passport and descriptor required: records not scanned. Offset of coordinate system
+            // in passport detected by border record, so passport printed by streaming reader.
+            boolean headerOnly = !commandLine.hasOption("count") && !commandLine.hasOption("verify") &&
+                    !commandLine.hasOption("record") && !commandLine.hasOption("recordGeometry");
+            sxfReaderOptions.streaming = headerOnly;
             for (File _file : files) {
 //                if (!sxfReaderOptions.quite) {
 //                    System.out.printf("Process file %s\n", _file.toString());
 //                }
-                try {
-                    SXFReader sxfReader = new SXFReader(_file, true, true);
-                    SXFPassport sxfPassport = sxfReader.getPassport();
-                    int srid = sxfPassport.srid();
-                    //
-                    if (!Utils.SRID_EX.containsKey(srid)) {
-                        Proj4FileReader proj4FileReader = new Proj4FileReader();
-                        String params[] = proj4FileReader.readParametersFromFile("EPSG", String.valueOf(srid));
-                        if (params == null || params.length == 0) {
-                            // Wrong srid. Force from passport.
-                            srid = sxfPassport.srid(true);
-                        }
-                    }
-                    //
-                    if (srid != 0) {
-                        srcSRID = srid;
-                    }
-                    if (!commandLine.hasOption("t")) {
-                        if (srcSRID != dstSRID && dstSRID != 0) {
-                            coordinateTransform = createCoordinateTransform();
+                if (!SXFArchive.isArchive(_file)) {
+                    if (headerOnly && !commandLine.hasOption("passport")) {
+                        try {
+                            SXFPassport sxfPassport = SXFPassport.readHeader(_file.toPath(), sxfReaderOptions.strict);
+                            printHeader(sxfPassport, sxfPassport.getDescriptor(), commandLine);
+                        } catch (IOException ex) {
+                            ex.printStackTrace();
                         }
+                        continue;
                     }
-                    if (commandLine.hasOption("passport")) {
-                        System.out.printf("%s\n", sxfReader.getPassport().toString());
+                    try (SXFReader sxfReader = new SXFReader(_file, sxfReaderOptions)) {
+                        process(sxfReader, commandLine, geometryType);
+                    } catch (IOException ex) {
+                        ex.printStackTrace();
                     }
-                    if (commandLine.hasOption("descriptor")) {
-                        sxfReader.getDescriptor().print();
-                    }
-                    if (commandLine.hasOption("count")) {
-                        System.out.printf("Total records: %d\n", sxfReader.getCount());
-                    }
-                    String[] recordPair = null;
-                    if (commandLine.hasOption("record")) {
-                        recordPair = commandLine.getOptionValue("record").split(":");
-                    } else if (commandLine.hasOption("recordGeometry")) {
-                        recordPair = commandLine.getOptionValue("recordGeometry").split(":");
-                    }
-                    if (recordPair != null) {
-                        if (recordPair.length != 2) {
-                            System.err.println("Record search format must be - <type:i>");
-                            return;
+                    continue;
+                }
+                // Sheets read from archive without unpack
+                try (SXFArchive sxfArchive = new SXFArchive(_file)) {
+                    for (SXFArchive.Entry entry : sxfArchive.getEntries()) {
+                        if (!entry.getName().toLowerCase().endsWith(".sxf")) {
+                            continue;
                         }
-                        String type = recordPair[0];
-                        int value = Integer.parseInt(recordPair[1]);
-                        if (type.equalsIgnoreCase("incode")) {
-                            SXFRecord sxfRecord = sxfReader.getRecordByIncode(value);
-                            if (sxfRecord == null) {
-                                return;
-                            }
-                            if (commandLine.hasOption("record")) {
-                                System.out.println(sxfRecord.toString());
-                                if (sxfRecord.isTextExsits()) {
-                                    printText(sxfRecord);
-                                }
-                                if (sxfRecord.isSemanticExists()) {
-                                    printSemantics(sxfRecord);
-                                }
-                            }
-                            if (commandLine.hasOption("recordGeometry")) {
-                                printGeometry(sxfRecord, geometryType);
-                            }
-                        } else if (type.equalsIgnoreCase("excode")) {
-                            List<SXFRecord> sxfRecords = sxfReader.getRecordByExcode(value);
-                            for (SXFRecord sxfRecord : sxfRecords) {
-                                if (commandLine.hasOption("record")) {
-                                    System.out.println(sxfRecord.toString());
-                                    if (sxfRecord.isTextExsits()) {
-                                        printText(sxfRecord);
-                                    }
-                                    if (sxfRecord.isSemanticExists()) {
-                                        printSemantics(sxfRecord);
-                                    }
-                                }
-                                if (commandLine.hasOption("recordGeometry")) {
-                                    if (commandLine.hasOption("recordGeometry")) {
-                                        printGeometry(sxfRecord, geometryType);
-                                    }
-                                }
-                            }
-                        } else if (type.equalsIgnoreCase("number")) {
-                            SXFRecord sxfRecord = sxfReader.getRecordByNumber(value);
-                            if (sxfRecord == null) {
-                                return;
-                            }
-                            if (commandLine.hasOption("record")) {
-                                System.out.println(sxfRecord.toString());
-                                if (sxfRecord.isTextExsits()) {
-                                    printText(sxfRecord);
-                                }
-                                if (sxfRecord.isSemanticExists()) {
-                                    printSemantics(sxfRecord);
-                                }
-                            }
-                            if (commandLine.hasOption("recordGeometry")) {
-                                printGeometry(sxfRecord, geometryType);
-                            }
-                        } else {
-                            System.err.printf("Record search type - %s - not supported.\n", type);
-                            return;
+                        try (SXFReader sxfReader = entry.openReader(sxfReaderOptions)) {
+                            process(sxfReader, commandLine, geometryType);
+                        } catch (IOException ex) {
+                            ex.printStackTrace();
                         }
                     }
                 } catch (IOException ex) {
                     ex.printStackTrace();
-                    continue;
                 }
             }
         } catch (ParseException e) {
@@ -247,6 +188,127 @@ public class SxfInfo {
         }
     }
 
+    /**
+     * Print info of one sheet.
+     * @param sxfReader reader of sheet.
+     * @param commandLine command line.
+     * @param geometryType print type of geometry.
+     * @throws IOException exception if wrong.
+     */
+    private static void process(SXFReader sxfReader, CommandLine commandLine, String geometryType) throws IOException {
+        SXFPassport sxfPassport = sxfReader.getPassport();
+        int srid = sxfPassport.srid();
+        //
+        if (!Utils.SRID_EX.containsKey(srid)) {
+            Proj4FileReader proj4FileReader = new Proj4FileReader();
+            String params[] = proj4FileReader.readParametersFromFile("EPSG", String.valueOf(srid));
+            if (params == null || params.length == 0) {
+                // Wrong srid. Force from passport.
+                srid = sxfPassport.srid(true);
+            }
+        }
+        //
+        if (srid != 0) {
+            srcSRID = srid;
+        }
+        if (!commandLine.hasOption("t")) {
+            if (srcSRID != dstSRID && dstSRID != 0) {
+                coordinateTransform = createCoordinateTransform();
+            }
+        }
+        printHeader(sxfReader.getPassport(), sxfReader.getDescriptor(), commandLine);
+        if (commandLine.hasOption("count")) {
+            System.out.printf("Total records: %d\n", sxfReader.getCount());
+        }
+        if (commandLine.hasOption("verify")) {
+            int checkSum = sxfReader.calculateCheckSum();
+            if (checkSum == sxfReader.getPassport().getCheckSum()) {
+                System.out.println("Checksum: OK");
+            } else {
+                System.out.printf("Checksum: wrong (passport %d, computed %d)\n", sxfReader.getPassport().getCheckSum(), checkSum);
+            }
+        }
+        String[] recordPair = null;
+        if (commandLine.hasOption("record")) {
+            recordPair = commandLine.getOptionValue("record").split(":");
+        } else if (commandLine.hasOption("recordGeometry")) {
+            recordPair = commandLine.getOptionValue("recordGeometry").split(":");
+        }
+        if (recordPair != null) {
+            if (recordPair.length != 2) {
+                System.err.println("Record search format must be - <type:i>");
+                return;
+            }
+            String type = recordPair[0];
+            int value = Integer.parseInt(recordPair[1]);
+            if (type.equalsIgnoreCase("incode")) {
+                SXFRecord sxfRecord = sxfReader.getRecordByIncode(value);
+                if (sxfRecord == null) {
+                    return;
+                }
+                if (commandLine.hasOption("record")) {
+                    System.out.println(sxfRecord.toString());
+                    if (sxfRecord.isTextExsits()) {
+                        printText(sxfRecord);
+                    }
+                    if (sxfRecord.isSemanticExists()) {
+                        printSemantics(sxfRecord);
+                    }
+                }
+                if (commandLine.hasOption("recordGeometry")) {
+                    printGeometry(sxfRecord, geometryType);
+                }
+            } else if (type.equalsIgnoreCase("excode")) {
+                List<SXFRecord> sxfRecords = sxfReader.getRecordByExcode(value);
+                for (SXFRecord sxfRecord : sxfRecords) {
+                    if (commandLine.hasOption("record")) {
+                        System.out.println(sxfRecord.toString());
+                        if (sxfRecord.isTextExsits()) {
+                            printText(sxfRecord);
+                        }
+                        if (sxfRecord.isSemanticExists()) {
+                            printSemantics(sxfRecord);
+                        }
+                    }
+                    if (commandLine.hasOption("recordGeometry")) {
+                        if (commandLine.hasOption("recordGeometry")) {
+                            printGeometry(sxfRecord, geometryType);
+                        }
+                    }
+                }
+            } else if (type.equalsIgnoreCase("number")) {
+                SXFRecord sxfRecord = sxfReader.getRecordByNumber(value);
+                if (sxfRecord == null) {
+                    return;
+                }
+                if (commandLine.hasOption("record")) {
+                    System.out.println(sxfRecord.toString());
+                    if (sxfRecord.isTextExsits()) {
+                        printText(sxfRecord);
+                    }
+                    if (sxfRecord.isSemanticExists()) {
+                        printSemantics(sxfRecord);
+                    }
+                }
+                if (commandLine.hasOption("recordGeometry")) {
+                    printGeometry(sxfRecord, geometryType);
+                }
+            } else {
+                System.err.printf("Record search type - %s - not supported.\n", type);
+                return;
+            }
+        }
+    }
+
+    private static void printHeader(SXFPassport sxfPassport, SXFDescriptor sxfDescriptor, CommandLine commandLine) {
+        if (commandLine.hasOption("passport")) {
+            System.out.printf("%s\n", sxfPassport.toString());
+        }
+        if (commandLine.hasOption("descriptor")) {
+            sxfDescriptor.print();
+        }
+    }
+
     private static void printGeometry(SXFRecord sxfRecord, String geometryType) throws IOException {
         Geometry geometry = sxfRecord.geometry();
         if (coordinateTransform != null) {